@@ -0,0 +1,135 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 比较两次JMH运行的结果（-rf csv 输出的文件），按测试项和参数逐行对齐，输出分数的变化
+ * 吞吐量类的模式分数越高越好，耗时类的模式分数越低越好，变化一列已按此换算：正数表示变快
+ * 用法：java -cp benchmarks.jar bench.CompareResults before.csv after.csv
+ */
+public class CompareResults {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults <before.csv> <after.csv>");
+            System.exit(1);
+        }
+        Map<String, Result> before = read(args[0]);
+        Map<String, Result> after = read(args[1]);
+
+        System.out.println(String.format(Locale.ROOT, "%-70s %16s %16s %10s", "Benchmark", "Before", "After", "Change"));
+        for (Map.Entry<String, Result> entry : after.entrySet()) {
+            Result now = entry.getValue();
+            Result old = before.get(entry.getKey());
+            String change;
+            if (old == null) {
+                change = "new";
+            } else {
+                double ratio = now.higherIsBetter() ? now.score / old.score : old.score / now.score;
+                change = String.format(Locale.ROOT, "%+.1f%%", (ratio - 1) * 100);
+                if (Math.abs(now.score - old.score) <= now.error + old.error) {
+                    //差异在误差范围内
+                    change += "~";
+                }
+            }
+            System.out.println(String.format(Locale.ROOT, "%-70s %16s %16s %10s",
+                    entry.getKey(),
+                    old == null ? "-" : old.format(),
+                    now.format(),
+                    change));
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key)) {
+                System.out.println(String.format(Locale.ROOT, "%-70s %16s %16s %10s",
+                        key, before.get(key).format(), "-", "removed"));
+            }
+        }
+    }
+
+    /**
+     * 读取JMH的csv结果，以测试项、模式、线程数和参数作为键
+     */
+    private static Map<String, Result> read(String file) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+        Map<String, Result> results = new LinkedHashMap<>();
+        if (lines.isEmpty()) {
+            return results;
+        }
+        List<String> columns = split(lines.get(0));
+        for (int i = 1; i < lines.size(); i++) {
+            if (lines.get(i).trim().isEmpty()) {
+                continue;
+            }
+            List<String> values = split(lines.get(i));
+            StringBuilder key = new StringBuilder(values.get(0))
+                    .append(" ").append(values.get(1))
+                    .append(" t").append(values.get(2));
+            for (int c = 7; c < values.size() && c < columns.size(); c++) {
+                if (!values.get(c).isEmpty()) {
+                    key.append(' ').append(columns.get(c).replace("Param: ", "")).append('=').append(values.get(c));
+                }
+            }
+            String mode = values.get(1);
+            double score = Double.parseDouble(values.get(4));
+            double error = values.get(5).isEmpty() || values.get(5).equals("NaN") ? 0 : Double.parseDouble(values.get(5));
+            results.put(key.toString(), new Result(mode, score, error, values.get(6)));
+        }
+        return results;
+    }
+
+    /**
+     * 拆分一行csv，字段可以带双引号
+     */
+    private static List<String> split(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static class Result {
+        final String mode;
+        final double score;
+        final double error;
+        final String unit;
+
+        Result(String mode, double score, double error, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+
+        String format() {
+            return String.format(Locale.ROOT, "%.3f %s", score, unit);
+        }
+    }
+}
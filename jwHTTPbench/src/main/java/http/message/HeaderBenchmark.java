@@ -0,0 +1,92 @@
+package http.message;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 报文头的设置、查找与编码：setProperty、getProperty、buildHeader（调试输出使用的字符串形式）、getHeaderBytes和writeTo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeaderBenchmark {
+    private BenchMessage message;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() {
+        message = typicalResponse();
+        buffer = ByteBuffer.allocateDirect(4 * 1024);
+    }
+
+    /**
+     * 一个典型静态资源响应的报文头
+     */
+    private static BenchMessage typicalResponse() {
+        BenchMessage message = new BenchMessage();
+        message.setProperty("Server", "JiWangHTTPServer/1.0");
+        message.setProperty("Date", "Fri, 16 Oct 2026 20:59:30 GMT");
+        message.setProperty("Content-Type", "text/html");
+        message.setProperty("Content-Length", "6772");
+        message.setProperty("Vary", "Accept-Encoding");
+        message.setProperty("Accept-Ranges", "bytes");
+        message.setProperty("Cache-Control", "no-cache, no-store, must-revalidate");
+        message.setProperty(HTTPMessage.BODY_ENCODING, HTTPMessage.BODY_ENCODING_BINARY);
+        return message;
+    }
+
+    @Benchmark
+    public BenchMessage setProperty() {
+        return typicalResponse();
+    }
+
+    @Benchmark
+    public String getProperty() {
+        return message.getProperty("content-type");
+    }
+
+    @Benchmark
+    public String getPropertyByName() {
+        return message.getProperty(HeaderName.CONTENT_TYPE);
+    }
+
+    @Benchmark
+    public String buildHeader() {
+        return message.buildHeader(new StringBuilder(message.getStartLine())).toString();
+    }
+
+    @Benchmark
+    public byte[] getHeaderBytes() {
+        return message.getHeaderBytes();
+    }
+
+    @Benchmark
+    public int writeTo() {
+        buffer.clear();
+        return message.writeTo(buffer, 0);
+    }
+
+    /**
+     * 只有起始行的报文，HTTPMessage本身是抽象类
+     */
+    static class BenchMessage extends HTTPMessage {
+        @Override
+        protected String getStartLine() {
+            return "HTTP/1.1 200 OK" + CRLF;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package http.mime;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * mime类型的查找，每个上传的请求和每个响应都会调用
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MimeTypeBenchmark {
+    //最先列出的类型、最后列出的类型和未列出的类型
+    @Param({"image/jpeg", "text/html", "application/json"})
+    public String mimeType;
+
+    @Benchmark
+    public String getPostfix() {
+        return MimeType.getPostfix(mimeType);
+    }
+
+    @Benchmark
+    public boolean isCompressible() {
+        return MimeType.isCompressible(mimeType);
+    }
+}
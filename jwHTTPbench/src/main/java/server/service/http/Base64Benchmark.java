@@ -0,0 +1,70 @@
+package server.service.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 旧格式Base64报文体的编解码，与HTTPRequestHandler中的用法相同：
+ * 下载时把整个文件MIME编码，上传时边读边解码
+ * copy为原样读写同样字节数的开销，作为对照
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Base64Benchmark {
+    private byte[] raw;
+    private byte[] encoded;
+    private final byte[] transfer = new byte[8192];
+
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream in = Base64Benchmark.class.getResourceAsStream("/public/pic.jpg")) {
+            raw = readAll(in);
+        }
+        encoded = Base64.getMimeEncoder().encode(raw);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return Base64.getMimeEncoder().encode(raw);
+    }
+
+    @Benchmark
+    public byte[] decodeStream() throws IOException {
+        try (InputStream in = Base64.getMimeDecoder().wrap(new ByteArrayInputStream(encoded))) {
+            return readAll(in);
+        }
+    }
+
+    @Benchmark
+    public byte[] copy() throws IOException {
+        return readAll(new ByteArrayInputStream(raw));
+    }
+
+    private byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw == null ? 16 * 1024 : raw.length);
+        int count;
+        while ((count = in.read(transfer)) >= 0) {
+            out.write(transfer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
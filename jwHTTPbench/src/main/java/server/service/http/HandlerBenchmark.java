@@ -0,0 +1,73 @@
+package server.service.http;
+
+import http.message.ContentSource;
+import http.method.HTTPMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 业务方法处理一个GET请求：查找资源、条件请求判断、协商编码并构建响应
+ * binary为false时模拟旧客户端，非text类型的报文体按Base64格式发送
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HandlerBenchmark {
+    @Param({"/index.html", "/pic.jpg"})
+    public String resource;
+
+    @Param({"true", "false"})
+    public boolean binary;
+
+    @Param({"true", "false"})
+    public boolean cache;
+
+    private HTTPRequestHandler handler;
+
+    @Setup
+    public void setup() throws IOException {
+        HTTPServiceConfig config = new HTTPServiceConfig();
+        config.setLogLevel(HTTPServiceConfig.LogLevel.ERROR);
+        if (!cache) {
+            config.setCacheCapacity(0);
+        }
+        handler = new HTTPRequestHandler(config);
+        handler.init();
+    }
+
+    @Benchmark
+    public ResponseMessage business() throws IOException {
+        RequestMessage req = new RequestMessage(HTTPMethod.GET, resource);
+        req.putField("accept-encoding", "gzip, deflate");
+        if (binary) {
+            req.putField("x-body-encoding", "binary");
+        }
+        ResponseMessage res = handler.business(req);
+        //响应不写出，直接关闭打开的文件
+        FileChannel channel = res.getContentChannel();
+        if (channel != null) {
+            channel.close();
+        }
+        ContentSource source = res.getContentSource();
+        if (source != null) {
+            source.close();
+        }
+        return res;
+    }
+}
@@ -0,0 +1,177 @@
+package server.service.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端的回环测试：在同一进程中启动服务，每个测试线程用一个长连接依次发送GET请求并读完响应
+ * 用 -t 指定并发的连接数，端口默认为18089，可用 -Djwhttp.bench.port 修改
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+    private static final int PORT = Integer.getInteger("jwhttp.bench.port", 18089);
+
+    /**
+     * 被测的服务，每次fork启动一次，随进程退出
+     */
+    @State(Scope.Benchmark)
+    public static class Service {
+        //nio为ServerHTTPService，virtual为VirtualThreadHTTPService
+        @Param({"nio", "virtual"})
+        public String mode;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            HTTPServiceConfig config = new HTTPServiceConfig();
+            config.setLogLevel(HTTPServiceConfig.LogLevel.ERROR);
+            config.setAccessLogPath("");
+            config.setMaxKeepAliveRequests(Integer.MAX_VALUE);
+            Runnable service;
+            if ("virtual".equals(mode)) {
+                VirtualThreadHTTPService virtual = new VirtualThreadHTTPService(PORT, config);
+                virtual.init();
+                service = virtual;
+            } else {
+                ServerHTTPService nio = new ServerHTTPService(PORT, config);
+                nio.init();
+                service = nio;
+            }
+            Thread thread = new Thread(service, "jwhttp-bench-service");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 每个测试线程的长连接
+     */
+    @State(Scope.Thread)
+    public static class Connection {
+        @Param({"/index.html", "/pic.jpg"})
+        public String resource;
+
+        private byte[] request;
+        private Socket socket;
+        private InputStream in;
+        private OutputStream out;
+        private final byte[] line = new byte[1024];
+        private final byte[] skip = new byte[16 * 1024];
+
+        //以Service为参数，保证服务在连接之前启动
+        @Setup(Level.Trial)
+        public void connect(Service service) throws IOException {
+            request = ("GET " + resource + " HTTP/1.1\r\n"
+                    + "Host: 127.0.0.1:" + PORT + "\r\n"
+                    + "X-Body-Encoding: binary\r\n"
+                    + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            open();
+        }
+
+        private void open() throws IOException {
+            socket = new Socket("127.0.0.1", PORT);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+            out = socket.getOutputStream();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        /**
+         * 发送请求并读完响应，服务端关闭了连接时重新连接再发送
+         *
+         * @return 响应的状态码
+         */
+        int exchange() throws IOException {
+            try {
+                return send();
+            } catch (EOFException | SocketException e) {
+                socket.close();
+                open();
+                return send();
+            }
+        }
+
+        private int send() throws IOException {
+            out.write(request);
+            out.flush();
+            int status = -1;
+            long contentLength = 0;
+            boolean close = false;
+            int length;
+            while ((length = readLine()) > 0) {
+                String header = new String(line, 0, length, StandardCharsets.US_ASCII);
+                if (status < 0) {
+                    status = Integer.parseInt(header.substring(9, 12));
+                } else if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                    contentLength = Long.parseLong(header.substring(15).trim());
+                } else if (header.regionMatches(true, 0, "Connection:", 0, 11)) {
+                    close = header.substring(11).trim().equalsIgnoreCase("close");
+                }
+            }
+            while (contentLength > 0) {
+                int count = in.read(skip, 0, (int) Math.min(skip.length, contentLength));
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                contentLength -= count;
+            }
+            if (close) {
+                socket.close();
+                open();
+            }
+            return status;
+        }
+
+        /**
+         * 读取一行到line中，不含CRLF
+         *
+         * @return 行的长度
+         */
+        private int readLine() throws IOException {
+            int length = 0;
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    throw new EOFException();
+                }
+                if (b != '\r' && length < line.length) {
+                    line[length++] = (byte) b;
+                }
+            }
+            return length;
+        }
+    }
+
+    @Benchmark
+    public int get(Service service, Connection connection) throws IOException {
+        return connection.exchange();
+    }
+}
@@ -0,0 +1,74 @@
+package server.service.http;
+
+import http.buffer.BufferPool;
+import http.date.HTTPDate;
+import http.method.HTTPMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端报文的输出：调试用的toString，以及写出前编码为缓冲区的toBuffers
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageBenchmark {
+    private ResponseMessage response;
+    private RequestMessage request;
+    private BufferPool pool;
+
+    @Setup
+    public void setup() {
+        byte[] body = new byte[1024];
+        Arrays.fill(body, (byte) 'a');
+        response = new ResponseMessage(200);
+        response.setProperty("Server", "JiWangHTTPServer/1.0");
+        response.setProperty("Date", HTTPDate.now());
+        response.setProperty("Content-Type", "text/html");
+        response.setProperty("Vary", "Accept-Encoding");
+        response.setContent(body);
+
+        request = new RequestMessage(HTTPMethod.GET, "/index.html");
+        request.putField("accept-encoding", "gzip, deflate, br");
+        request.putField("connection", "keep-alive");
+        request.putField("if-none-match", "\"0123456789abcdef0123456789abcdef\"");
+        request.putField("user-agent", "Mozilla/5.0 (X11; Linux x86_64) Gecko/20100101 Firefox/130.0");
+        request.setContent("name=value".getBytes(StandardCharsets.US_ASCII));
+
+        pool = new BufferPool(BufferPool.DEFAULT_SIZE_CLASSES, 1024 * 1024);
+    }
+
+    @Benchmark
+    public String responseToString() {
+        return response.toString();
+    }
+
+    @Benchmark
+    public String requestToString() {
+        return request.toString();
+    }
+
+    @Benchmark
+    public void responseToBuffers(Blackhole blackhole) {
+        ByteBuffer headerBuffer = pool.acquire(4 * 1024);
+        blackhole.consume(response.toBuffers(headerBuffer));
+        pool.release(headerBuffer);
+    }
+}
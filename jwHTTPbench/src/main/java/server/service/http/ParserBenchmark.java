@@ -0,0 +1,97 @@
+package server.service.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求的解析，即ServerHTTPService从读缓冲区中得到RequestMessage的过程
+ * pipelined一次解析同一缓冲区中连续的16个请求，结果按16个请求计
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+    private static final int PIPELINE_DEPTH = 16;
+
+    private static final String MINIMAL = "GET /index.html HTTP/1.1\r\n"
+            + "Host: 127.0.0.1:8089\r\n"
+            + "\r\n";
+
+    //浏览器发出的请求，大部分报文头参数服务端并不关心
+    private static final String BROWSER = "GET /index.html HTTP/1.1\r\n"
+            + "Host: 127.0.0.1:8089\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:130.0) Gecko/20100101 Firefox/130.0\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+            + "Accept-Language: en-US,en;q=0.5\r\n"
+            + "Accept-Encoding: gzip, deflate, br, zstd\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Referer: http://127.0.0.1:8089/\r\n"
+            + "Upgrade-Insecure-Requests: 1\r\n"
+            + "If-Modified-Since: Fri, 07 Jun 2019 00:00:00 GMT\r\n"
+            + "If-None-Match: \"0123456789abcdef0123456789abcdef\"\r\n"
+            + "Sec-Fetch-Dest: document\r\n"
+            + "Sec-Fetch-Mode: navigate\r\n"
+            + "Sec-Fetch-Site: same-origin\r\n"
+            + "Priority: u=0, i\r\n"
+            + "\r\n";
+
+    @Param({"minimal", "browser"})
+    public String request;
+
+    private RequestParser parser;
+    private ByteBuffer single;
+    private ByteBuffer pipelined;
+
+    @Setup
+    public void setup() {
+        HTTPServiceConfig config = new HTTPServiceConfig();
+        config.setLogLevel(HTTPServiceConfig.LogLevel.ERROR);
+        parser = new HTTPRequestHandler(config).newParser();
+        byte[] bytes = ("minimal".equals(request) ? MINIMAL : BROWSER).getBytes(StandardCharsets.US_ASCII);
+        single = ByteBuffer.allocateDirect(bytes.length);
+        single.put(bytes).flip();
+        pipelined = ByteBuffer.allocateDirect(bytes.length * PIPELINE_DEPTH);
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            pipelined.put(bytes);
+        }
+        pipelined.flip();
+    }
+
+    @Benchmark
+    public RequestMessage parse() throws RequestParser.MalformedRequestException, IOException {
+        single.rewind();
+        parser.parse(single);
+        RequestMessage req = parser.getRequest();
+        parser.reset();
+        return req;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public void parsePipelined(Blackhole blackhole) throws RequestParser.MalformedRequestException, IOException {
+        pipelined.rewind();
+        while (parser.parse(pipelined)) {
+            blackhole.consume(parser.getRequest());
+            parser.reset();
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package client;
 
 import client.http.HTTPService;
+import client.http.LoadGenerator;
+
+import java.util.Arrays;
 
 /**
  * Class Client
  * HTTP客户端的启动类
+ * 以 load 为第一个参数启动时进入非交互的压测模式，参数见LoadGenerator
  */
 class Client {
     /**
@@ -13,6 +17,17 @@ class Client {
     private static HTTPService httpService;
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equalsIgnoreCase("load")) {
+            try {
+                LoadGenerator.fromArgs(Arrays.copyOfRange(args, 1, args.length)).run();
+            } catch (IllegalArgumentException e) {
+                System.err.println("Load : " + e.getMessage());
+                System.err.println("Usage: load [-c connections] [-r rate] [-d seconds] [-w seconds] [-i millis] [-f file] URL[@weight] ...");
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return;
+        }
         httpService = HTTPService.getInstance();
         try {
             httpService.init();
@@ -22,4 +37,4 @@ class Client {
         }
     }
 
-}
\ No newline at end of file
+}
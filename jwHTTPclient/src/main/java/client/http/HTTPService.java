@@ -1,9 +1,14 @@
 package client.http;
 
+import http.buffer.BufferPool;
+import http.message.ChunkedCoding;
 import http.message.HTTPMessage;
+import http.message.HeaderName;
+import http.message.HeaderTable;
 import http.method.HTTPMethod;
 import http.mime.MimeType;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
@@ -42,12 +47,21 @@ public class HTTPService {
     //用于保存连接SocketChannel的Map，复用open过的SocketChannel
     private static Map<String, SocketChannel> httpMap;
 
+    //收发报文使用的直接缓冲区，从进程内共用的缓冲区池借出，用完归还
+    private static final BufferPool bufferPool = BufferPool.getDefault();
+
+    //从直接缓冲区复制到堆上报文的中转数组，命令在同一线程中依次执行，可以共用
+    private static final byte[] transfer = new byte[16 * 1024];
+
     //用于保存接收到301响应后的跳转
     private static Map<String, String> redirectMap;
 
     //用于保存文件的Last-Modified信息
     private static Map<String, String> lastModifiedMap;
 
+    //用于保存文件的ETag信息
+    private static Map<String, String> entityTagMap;
+
     //维护一个HTTP服务对象，以实现单例
     private static HTTPService httpService;
 
@@ -113,6 +127,7 @@ public class HTTPService {
             httpMap = new ConcurrentHashMap<>();
             redirectMap = new ConcurrentHashMap<>();
             lastModifiedMap = new ConcurrentHashMap<>();
+            entityTagMap = new ConcurrentHashMap<>();
             histories = new ConcurrentHashMap<>();
             receiveContentDir = Paths.get(System.getProperty("user.dir") + "\\receive");
             if (!Files.exists(receiveContentDir)) {
@@ -322,8 +337,8 @@ public class HTTPService {
                                             err("File is not image");
                                             return;
                                         }
-                                        //对图片进行Base64编码
-                                        ch.content = Base64.getMimeEncoder().encode(Files.readAllBytes(file));
+                                        //图片以原始字节发送，由Content-Length标明长度
+                                        ch.content = Files.readAllBytes(file);
                                     } catch (IOException ioe) {
                                         ioe.printStackTrace();
                                         return;
@@ -431,12 +446,18 @@ public class HTTPService {
             //构建请求报文
             RequestMessage req = new RequestMessage(method, resource);
             req.setProperty("Host", host);
+            //声明本客户端收发原始字节的报文体
+            req.setProperty(HTTPMessage.BODY_ENCODING, HTTPMessage.BODY_ENCODING_BINARY);
             if (method == HTTPMethod.POST) {
                 req.setProperty("Content-Type", content_type);
             }
             if (lastModifiedMap.containsKey(url())) {
                 req.setProperty("If-Modified-Since", lastModifiedMap.get(url()));
             }
+            //服务端优先按ETag判断资源是否修改
+            if (entityTagMap.containsKey(url())) {
+                req.setProperty("If-None-Match", entityTagMap.get(url()));
+            }
             req.setContent(content);
 
             //建立与Http服务器的通信
@@ -450,7 +471,14 @@ public class HTTPService {
                 socketChannel = httpMap.get(noPrefixURL);
                 // 服务端主动断掉连接时，客户端需要用此方法来判断连接是否已经断开
                 // 服务端会在其输出流中写入-1，以此来判断
-                if (socketChannel.read(ByteBuffer.allocate(8)) < 0) {
+                ByteBuffer probe = bufferPool.acquire(8);
+                int probed;
+                try {
+                    probed = socketChannel.read(probe);
+                } finally {
+                    bufferPool.release(probe);
+                }
+                if (probed < 0) {
                     socketChannel = SocketChannel.open();
                     socketChannel.configureBlocking(false);
                     socketChannel.connect(new InetSocketAddress(host, port));
@@ -458,69 +486,214 @@ public class HTTPService {
                 }
             }
             try {
-                do {
+                byte[] response;
+                //收发一个请求期间切换为阻塞模式，读写时等待而不是空转
+                socketChannel.configureBlocking(true);
+                try {
                     //阻塞到连接完成
                     socketChannel.finishConnect();
-                } while (!socketChannel.finishConnect());
-                HTTPService.notify("Connect to Http server.");
-
-                //发送请求报文
-                socketChannel.write(ByteBuffer.wrap(req.toString().getBytes()));
-                HTTPService.notify("Request to Http server.\n>>>>>>>>>>>>>>>>>>>>");
-                System.out.println(req.toString() + "\n>>>>>>>>>>>>>>>>>>>>");
-
-                //接受响应报文
-                ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
-                StringBuilder stringBuilder = new StringBuilder();
-                int count;
-                String res;
-                do {
-                    //阻塞至有读入
-                    byteBuffer.clear();
-                } while ((count = socketChannel.read(byteBuffer)) <= 0);
-                do {
-                    stringBuilder.append(new String(byteBuffer.array(), 0, count));
-                    byteBuffer.clear();
-                } while ((count = socketChannel.read(byteBuffer)) > 0);
-
+                    HTTPService.notify("Connect to Http server.");
+
+                    //发送请求报文
+                    writeRequest(socketChannel, req);
+                    HTTPService.notify("Request to Http server.\n>>>>>>>>>>>>>>>>>>>>");
+                    System.out.println(new String(req.getHeaderBytes(), StandardCharsets.UTF_8) + "\n>>>>>>>>>>>>>>>>>>>>");
+
+                    //接受响应
+                    response = readResponse(socketChannel);
+                } finally {
+                    //复用连接前的探测读取依赖非阻塞模式，重定向时处理响应就会复用连接，因此在处理响应前恢复
+                    if (socketChannel.isOpen()) {
+                        socketChannel.configureBlocking(false);
+                    }
+                }
                 //处理响应
-                res = stringBuilder.toString();
-                handleResponse(res);
+                handleResponse(response);
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
 
+        /**
+         * 写出请求报文，起始行和报文头分批编码到同一个缓冲区中写出，报文体直接写出不再复制
+         *
+         * @param socketChannel 与服务器的连接
+         * @param req           请求
+         * @throws IOException IO异常
+         */
+        private void writeRequest(SocketChannel socketChannel, RequestMessage req) throws IOException {
+            ByteBuffer headerBuffer = bufferPool.acquire(4 * 1024);
+            try {
+                int offset = 0;
+                do {
+                    headerBuffer.clear();
+                    offset = req.writeTo(headerBuffer, offset);
+                    headerBuffer.flip();
+                    while (headerBuffer.hasRemaining()) {
+                        socketChannel.write(headerBuffer);
+                    }
+                } while (offset >= 0);
+            } finally {
+                bufferPool.release(headerBuffer);
+            }
+            if (req.getContent() != null) {
+                ByteBuffer contentBuffer = ByteBuffer.wrap(req.getContent());
+                while (contentBuffer.hasRemaining()) {
+                    socketChannel.write(contentBuffer);
+                }
+            }
+        }
+
+        /**
+         * 读取一个完整的响应报文
+         * 报文体的长度由Content-Length确定，分块发送的报文体解码为连续的字节
+         * 旧版服务器不发送Content-Length时，读到服务器关闭连接为止
+         *
+         * @param socketChannel 与服务器的连接
+         * @return 响应报文的字节
+         * @throws IOException IO异常
+         */
+        private byte[] readResponse(SocketChannel socketChannel) throws IOException {
+            ByteBuffer byteBuffer = bufferPool.acquire(transfer.length);
+            try {
+                return readResponse(socketChannel, byteBuffer);
+            } finally {
+                bufferPool.release(byteBuffer);
+            }
+        }
+
+        private byte[] readResponse(SocketChannel socketChannel, ByteBuffer byteBuffer) throws IOException {
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            int endPosOfHeader = -1;
+            long contentLength = -1;
+            //分块发送时报文体每读入一段就解码一段，received中是报文头和已解码的报文体
+            ChunkedCoding.Decoder decoder = null;
+            int count;
+            //连接处于阻塞模式，read阻塞至有读入；没有Content-Length也不分块时报文体由关闭连接结束
+            while ((count = socketChannel.read(byteBuffer)) >= 0) {
+                byteBuffer.flip();
+                byteBuffer.get(transfer, 0, count);
+                byteBuffer.clear();
+                if (decoder != null) {
+                    if (decoder.decode(transfer, 0, count, received) >= 0) {
+                        return received.toByteArray();
+                    }
+                    continue;
+                }
+                received.write(transfer, 0, count);
+                if (endPosOfHeader < 0) {
+                    //只在报文头读完之前复制已收到的字节
+                    byte[] bytes = received.toByteArray();
+                    endPosOfHeader = indexOfHeaderEnd(bytes);
+                    if (endPosOfHeader < 0) {
+                        continue;
+                    }
+                    HeaderTable headerFields = parseHeader(bytes, endPosOfHeader);
+                    contentLength = getContentLength(bytes, endPosOfHeader, headerFields);
+                    if (getField(headerFields, HeaderName.TRANSFER_ENCODING).equalsIgnoreCase(ChunkedCoding.CHUNKED)) {
+                        //报文头之后接上解码后的报文体
+                        decoder = new ChunkedCoding.Decoder();
+                        int bodyStart = endPosOfHeader + 4;
+                        received.reset();
+                        received.write(bytes, 0, bodyStart);
+                        if (decoder.decode(bytes, bodyStart, bytes.length - bodyStart, received) >= 0) {
+                            return received.toByteArray();
+                        }
+                        continue;
+                    }
+                }
+                if (contentLength >= 0 && received.size() >= endPosOfHeader + 4 + contentLength) {
+                    break;
+                }
+            }
+            return received.toByteArray();
+        }
+
+        /**
+         * @return 报文头结束处CRLFCRLF的位置，未找到时返回-1
+         */
+        private int indexOfHeaderEnd(byte[] bytes) {
+            for (int i = 0; i + 3 < bytes.length; i++) {
+                if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return 状态行结束处CRLF的位置，未找到时返回-1
+         */
+        private int indexOfStatusLineEnd(byte[] bytes, int endPosOfHeader) {
+            for (int i = 0; i + 1 < endPosOfHeader + 2; i++) {
+                if (bytes[i] == '\r' && bytes[i + 1] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * 解析状态行之后的报文头参数，参数值在读取时才从bytes中解码
+         *
+         * @param bytes          响应报文的字节
+         * @param endPosOfHeader 报文头结束处CRLFCRLF的位置
+         * @return 报文头参数表
+         */
+        private HeaderTable parseHeader(byte[] bytes, int endPosOfHeader) {
+            return HeaderTable.parse(bytes, indexOfStatusLineEnd(bytes, endPosOfHeader) + 2, endPosOfHeader + 2);
+        }
+
+        /**
+         * @param bytes          响应报文的字节
+         * @param endPosOfHeader 报文头结束处CRLFCRLF的位置
+         * @param headerFields   报文头参数表
+         * @return 报文体长度，未知时返回-1
+         */
+        private long getContentLength(byte[] bytes, int endPosOfHeader, HeaderTable headerFields) {
+            String[] statLineParts = new String(
+                    bytes, 0, indexOfStatusLineEnd(bytes, endPosOfHeader), StandardCharsets.ISO_8859_1
+            ).split(" ");
+            if (statLineParts.length > 1 && statLineParts[1].equals("304")) {
+                //304响应没有报文体
+                return 0;
+            }
+            String contentLength = getField(headerFields, HeaderName.CONTENT_LENGTH);
+            return contentLength.isEmpty() ? -1 : Long.parseLong(contentLength);
+        }
+
         /**
          * 处理响应的无参方法
          *
-         * @param res 响应字符串
+         * @param res 响应报文的字节
          * @throws Exception 调用handleRequest方法抛出的异常
          */
-        void handleResponse(String res) throws Exception {
-            HTTPService.notify("Response from Http Server\n<<<<<<<<<<\n" + res + "\n<<<<<<<<<<");
-
+        void handleResponse(byte[] res) throws Exception {
             final String CRLF = HTTPMessage.getCRLF();
-            int endPosOfHeader = res.indexOf(CRLF + CRLF);
-            //对响应切片，获得响应头
-            List<String> headerFields = new ArrayList<>(Arrays.asList(res.substring(0, endPosOfHeader).split(CRLF)));
+            int endPosOfHeader = indexOfHeaderEnd(res);
+            String header = new String(res, 0, endPosOfHeader, StandardCharsets.UTF_8);
+            //获得响应头
+            HeaderTable headerFields = parseHeader(res, endPosOfHeader);
             //获得状态行
-            List<String> statLineParts = new ArrayList<>(Arrays.asList(headerFields.get(0).split(" ")));
-            headerFields.remove(0);
-
-            int statusCode = Integer.parseInt(statLineParts.get(1));
-            String content = res.substring(endPosOfHeader + CRLF.length() * 2);
+            String[] statLineParts = header.substring(0, indexOfStatusLineEnd(res, endPosOfHeader)).split(" ");
+
+            int statusCode = Integer.parseInt(statLineParts[1]);
+            byte[] content = Arrays.copyOfRange(res, endPosOfHeader + CRLF.length() * 2, res.length);
+            String content_type = getField(headerFields, HeaderName.CONTENT_TYPE);
+            //只有text类型的报文体直接打印
+            HTTPService.notify("Response from Http Server\n<<<<<<<<<<\n" + header + CRLF + CRLF
+                    + (content_type.startsWith("text")
+                    ? new String(content, StandardCharsets.UTF_8)
+                    : "[" + content.length + " bytes]")
+                    + "\n<<<<<<<<<<");
             String location = "";//重定向url
             switch (statusCode) {
                 case 301:
                     //301重定向
-                    for (String field : headerFields) {
-                        if (field.toLowerCase().startsWith("location:")) {
-                            location = field.split("http://")[1].trim();
-                            //把响应含301状态码的记录进跳转地图里
-                            redirectMap.put(url(), getResource(location));
-                            break;
-                        }
+                    if (!getField(headerFields, HeaderName.LOCATION).isEmpty()) {
+                        location = getField(headerFields, HeaderName.LOCATION).split("http://")[1].trim();
+                        //把响应含301状态码的记录进跳转地图里
+                        redirectMap.put(url(), getResource(location));
                     }
                     new ConnectionHolder(
                             getHost(location),
@@ -531,11 +704,8 @@ public class HTTPService {
                     break;
                 case 302:
                     //302需要跳转
-                    for (String field : headerFields) {
-                        if (field.startsWith("Location:")) {
-                            location = field.split("http://")[1].trim();
-                            break;
-                        }
+                    if (!getField(headerFields, HeaderName.LOCATION).isEmpty()) {
+                        location = getField(headerFields, HeaderName.LOCATION).split("http://")[1].trim();
                     }
                     new ConnectionHolder(
                             getHost(location),
@@ -550,13 +720,19 @@ public class HTTPService {
                     break;
                 case 200:
                     //200:OK
-                    if (!content.trim().isEmpty()) {
+                    if (content.length > 0) {
                         // 如果有资源需要保存资源，记录资源的最后修改时间
-                        String content_type = getFiled(headerFields, "content-type");
                         String fileName = resource.substring(resource.lastIndexOf('/') + 1);
-                        putFile(content_type, fileName, content.getBytes());
-                        String last_modified = getFiled(headerFields, "last-modified");
+                        // 服务端没有标明报文体为原始字节时，按旧格式处理
+                        boolean binary = getField(headerFields, HeaderName.X_BODY_ENCODING)
+                                .equalsIgnoreCase(HTTPMessage.BODY_ENCODING_BINARY);
+                        putFile(content_type, fileName, content, !binary);
+                        String last_modified = getField(headerFields, HeaderName.LAST_MODIFIED);
                         lastModifiedMap.put(url(), last_modified);
+                        String etag = getField(headerFields, HeaderName.ETAG);
+                        if (!etag.isEmpty()) {
+                            entityTagMap.put(url(), etag);
+                        }
                     }
                     //记录历史记录
                     History_Handler.getInstance().addHistory(method.getMethodName().toUpperCase() + ' ' + url());
@@ -586,19 +762,16 @@ public class HTTPService {
             return location.substring(location.indexOf('/'));
         }
 
-        private String getFiled(List<String> headerFields, String key) {
-            String field = "";
-            for (String s : headerFields) {
-                if (s.toLowerCase().startsWith(key.toLowerCase())) {
-                    field = s.substring(s.indexOf(':') + 1);
-                    break;
-                }
-            }
-            return field;
+        /**
+         * @return 报文头参数值，不存在时返回空字符串
+         */
+        private String getField(HeaderTable headerFields, HeaderName key) {
+            String field = headerFields.get(key);
+            return field == null ? "" : field;
         }
 
-        private void putFile(String content_type, String name, byte[] content) throws Exception {
-            if (!content_type.startsWith("text")) {
+        private void putFile(String content_type, String name, byte[] content, boolean base64) throws Exception {
+            if (base64 && !content_type.startsWith("text")) {
                 //只有mime类型为text/*的资源不需要Base64编解码
                 content = Base64.getMimeDecoder().decode(content);
             }
@@ -0,0 +1,698 @@
+package client.http;
+
+import http.buffer.BufferPool;
+import http.message.HTTPMessage;
+import http.method.HTTPMethod;
+import http.metrics.LatencyHistogram;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 非交互的压测模式：打开若干个长连接，按URL组合反复发送GET请求，结束后输出吞吐量和延迟分位数
+ * 启动方式：java -jar jwHTTPclient.jar load [选项] URL[@权重] ...
+ * |-c 连接数：同时打开的长连接数，默认8
+ * |-r 速率：所有连接合计每秒发出的请求数（开环）；为0时每个连接收到响应后立即发出下一个请求（闭环），默认0
+ * |-d 秒数：计入结果的压测时长，默认30
+ * |-w 秒数：预热时长，预热期间的请求不计入结果，默认5
+ * |-i 毫秒：闭环模式下期望的请求间隔，用于修正协调遗漏，默认不修正
+ * |-f 文件：从文件读取URL组合，每行为 URL [权重]
+ * <p>
+ * 开环模式下每个请求都有按速率排定的发出时间，延迟从排定时间算起：服务端变慢导致请求被推迟发出时，
+ * 推迟的时间也计入延迟，不会因为连接在等待响应而漏记（协调遗漏，coordinated omission）
+ * 闭环模式下延迟从实际发出时算起；指定-i时，超过期望间隔的延迟按HdrHistogram的方式补记被漏掉的请求
+ * 所有URL需指向同一个主机和端口；服务端要求关闭连接或连接断开时重新连接
+ */
+public class LoadGenerator {
+    //用于在命令行中展示消息时的前缀
+    private static final String prefix = "Load";
+
+    //收报文使用的直接缓冲区，每个连接借一个，压测结束时归还
+    private static final BufferPool bufferPool = BufferPool.getDefault();
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private int connections = 8;
+    private double rate = 0;
+    private long durationNanos = 30_000_000_000L;
+    private long warmupNanos = 5_000_000_000L;
+    private long expectedIntervalNanos = 0;
+
+    private String host;
+    private int port = 80;
+    private final List<Target> targets = new ArrayList<>();
+
+    //权重的前缀和，按随机数二分查找选择URL
+    private int[] cumulativeWeights;
+
+    //开环模式下为从排定时间算起的延迟，闭环模式下为（修正后的）服务时间
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    //从实际发出到读完响应的时间，未经修正
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    //按状态码的首位分类计数，下标0为无法解析的状态码
+    private final LongAdder[] statusClasses = new LongAdder[6];
+
+    //所有连接共同的开始时间和计入结果的起止时间
+    private long startNanos;
+    private long measureStartNanos;
+    private long endNanos;
+
+    private volatile boolean stopped;
+
+    private LoadGenerator() {
+        for (int i = 0; i < statusClasses.length; i++) {
+            statusClasses[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 普通的消息提示
+     *
+     * @param s 输出的消息
+     */
+    private static void notify(String s) {
+        System.out.println(prefix + " : " + s);
+    }
+
+    /**
+     * 解析命令行参数，参数不合法时抛出IllegalArgumentException
+     *
+     * @param args load之后的命令行参数
+     * @return 配置好的压测
+     * @throws IOException 读取URL文件时的异常
+     */
+    public static LoadGenerator fromArgs(String[] args) throws IOException {
+        LoadGenerator generator = new LoadGenerator();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                generator.addTarget(arg, 1);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "-c":
+                    generator.connections = Integer.parseInt(value);
+                    break;
+                case "-r":
+                    generator.rate = Double.parseDouble(value);
+                    break;
+                case "-d":
+                    generator.durationNanos = (long) (Double.parseDouble(value) * 1e9);
+                    break;
+                case "-w":
+                    generator.warmupNanos = (long) (Double.parseDouble(value) * 1e9);
+                    break;
+                case "-i":
+                    generator.expectedIntervalNanos = (long) (Double.parseDouble(value) * 1e6);
+                    break;
+                case "-f":
+                    for (String line : Files.readAllLines(Paths.get(value), StandardCharsets.UTF_8)) {
+                        line = line.trim();
+                        if (line.isEmpty() || line.startsWith("#")) {
+                            continue;
+                        }
+                        String[] parts = line.split("\\s+");
+                        generator.addTarget(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (generator.targets.isEmpty()) {
+            throw new IllegalArgumentException("No URL given");
+        }
+        if (generator.connections < 1 || generator.rate < 0
+                || generator.durationNanos <= 0 || generator.warmupNanos < 0 || generator.expectedIntervalNanos < 0) {
+            throw new IllegalArgumentException("Connections and duration must be positive, other values non-negative");
+        }
+        generator.cumulativeWeights = new int[generator.targets.size()];
+        int sum = 0;
+        for (int i = 0; i < generator.targets.size(); i++) {
+            sum += generator.targets.get(i).weight;
+            generator.cumulativeWeights[i] = sum;
+        }
+        return generator;
+    }
+
+    /**
+     * 解析 [http://]host[:port]/resource[@weight] 形式的URL，加入URL组合
+     *
+     * @param spec   URL，可以用@后缀指定权重
+     * @param weight 未用@指定时的权重
+     */
+    private void addTarget(String spec, int weight) {
+        int at = spec.lastIndexOf('@');
+        if (at > 0) {
+            weight = Integer.parseInt(spec.substring(at + 1));
+            spec = spec.substring(0, at);
+        }
+        if (weight < 1) {
+            throw new IllegalArgumentException("Weight must be positive: " + spec);
+        }
+        if (spec.toLowerCase().startsWith("http://")) {
+            spec = spec.substring("http://".length());
+        }
+        int slash = spec.indexOf('/');
+        String address = slash < 0 ? spec : spec.substring(0, slash);
+        String resource = slash < 0 ? "/" : spec.substring(slash);
+        String targetHost = address;
+        int targetPort = 80;
+        int colon = address.lastIndexOf(':');
+        if (colon >= 0) {
+            targetHost = address.substring(0, colon);
+            targetPort = Integer.parseInt(address.substring(colon + 1));
+        }
+        if (targetHost.isEmpty()) {
+            throw new IllegalArgumentException("No host in URL: " + spec);
+        }
+        if (host == null) {
+            host = targetHost.toLowerCase();
+            port = targetPort;
+        } else if (!host.equalsIgnoreCase(targetHost) || port != targetPort) {
+            throw new IllegalArgumentException("All URLs must target " + host + ':' + port);
+        }
+
+        //请求报文只构建一次，压测时反复写出同一份字节
+        RequestMessage req = new RequestMessage(HTTPMethod.GET, resource);
+        req.setProperty("Host", host);
+        req.setProperty(HTTPMessage.BODY_ENCODING, HTTPMessage.BODY_ENCODING_BINARY);
+        targets.add(new Target(req.getHeaderBytes(), weight));
+    }
+
+    /**
+     * 运行压测直到结束，期间每秒输出一次进度，结束后输出结果
+     *
+     * @throws InterruptedException 等待连接线程时被中断
+     */
+    public void run() throws InterruptedException {
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        notify("Target " + host + ':' + port + ", " + targets.size() + " URL(s), " + connections + " connection(s), "
+                + (rate > 0 ? String.format("%.1f req/s (open loop)", rate) : "closed loop")
+                + String.format(", warmup %.1fs, duration %.1fs", warmupNanos / 1e9, durationNanos / 1e9));
+
+        startNanos = System.nanoTime();
+        measureStartNanos = startNanos + warmupNanos;
+        endNanos = measureStartNanos + durationNanos;
+
+        Worker[] workers = new Worker[connections];
+        Thread[] threads = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            workers[i] = new Worker(i, address);
+            threads[i] = new Thread(workers[i], "jwHTTP-load-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        long lastCompleted = 0;
+        long now;
+        while ((now = System.nanoTime()) < endNanos) {
+            Thread.sleep(Math.max(1, Math.min(1000, (endNanos - now) / 1_000_000)));
+            if (System.nanoTime() >= measureStartNanos) {
+                long total = completed.sum();
+                notify(String.format("%5.1fs %10d requests, %8d errors",
+                        (System.nanoTime() - measureStartNanos) / 1e9, total - lastCompleted, errors.sum()));
+                lastCompleted = total;
+            }
+        }
+
+        //留出一秒读完在途的响应，之后关闭连接，仍未返回的请求计为错误
+        stopped = true;
+        long graceDeadline = System.nanoTime() + 1_000_000_000L;
+        for (Thread thread : threads) {
+            thread.join(Math.max(1, (graceDeadline - System.nanoTime()) / 1_000_000));
+        }
+        for (Worker worker : workers) {
+            worker.close();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report();
+    }
+
+    /**
+     * 输出压测结果
+     */
+    private void report() {
+        double seconds = durationNanos / 1e9;
+        long total = completed.sum();
+        StringBuilder sb = new StringBuilder("Result\n");
+        sb.append(String.format("  Requests      %d in %.1fs, %d errors, %d reconnects%n",
+                total, seconds, errors.sum(), reconnects.sum()));
+        sb.append(String.format("  Throughput    %.1f req/s, %.2f MiB/s%n",
+                total / seconds, bytesReceived.sum() / seconds / (1024 * 1024)));
+        sb.append("  Status       ");
+        for (int i = 1; i < statusClasses.length; i++) {
+            sb.append(String.format(" %dxx=%d", i, statusClasses[i].sum()));
+        }
+        sb.append(String.format(" other=%d%n", statusClasses[0].sum()));
+        boolean corrected = rate > 0 || expectedIntervalNanos > 0;
+        appendPercentiles(sb, corrected ? "Latency (corrected)" : "Latency", latency);
+        if (corrected) {
+            appendPercentiles(sb, "Service time", serviceTime);
+        }
+        notify(sb.toString());
+    }
+
+    private static void appendPercentiles(StringBuilder sb, String name, LatencyHistogram histogram) {
+        long count = histogram.getCount();
+        sb.append(String.format("  %-20s mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms%n",
+                name,
+                count == 0 ? 0 : histogram.getSumNanos() / 1e6 / count,
+                histogram.valueAtQuantile(0.5) / 1e3,
+                histogram.valueAtQuantile(0.9) / 1e3,
+                histogram.valueAtQuantile(0.99) / 1e3,
+                histogram.valueAtQuantile(0.999) / 1e3,
+                histogram.valueAtQuantile(1) / 1e3));
+    }
+
+    /**
+     * 按权重随机选择一个URL
+     *
+     * @return URL在组合中的序号
+     */
+    private int nextTarget() {
+        if (cumulativeWeights.length == 1) {
+            return 0;
+        }
+        int r = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulativeWeights[mid] > r) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 记录一个计入结果的请求
+     *
+     * @param intendedNanos 排定的发出时间，闭环模式下等于实际发出时间
+     * @param sentNanos     实际发出时间
+     * @param doneNanos     读完响应的时间
+     */
+    private void record(long intendedNanos, long sentNanos, long doneNanos) {
+        serviceTime.recordNanos(doneNanos - sentNanos);
+        long value = doneNanos - intendedNanos;
+        latency.recordNanos(value);
+        if (rate <= 0 && expectedIntervalNanos > 0) {
+            //闭环模式下，一个请求耗时超过期望间隔时，本应在其间发出的请求都被推迟了，按递减的延迟补记
+            for (long missing = value - expectedIntervalNanos; missing >= expectedIntervalNanos;
+                 missing -= expectedIntervalNanos) {
+                latency.recordNanos(missing);
+            }
+        }
+    }
+
+    /**
+     * URL组合中的一项
+     */
+    private static final class Target {
+        final byte[] request;
+        final int weight;
+
+        Target(byte[] request, int weight) {
+            this.request = request;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 一个长连接，在自己的线程中按顺序发送请求、读完响应
+     */
+    private final class Worker implements Runnable {
+        private final InetSocketAddress address;
+
+        //开环模式下本连接相邻两个请求的排定间隔，各连接的起点错开
+        private final long intervalNanos;
+        private final long offsetNanos;
+
+        //每个URL的请求报文，重复写出时只需rewind
+        private final ByteBuffer[] requests;
+
+        private final ByteBuffer readBuffer;
+
+        private volatile SocketChannel channel;
+
+        //读完一个响应后，服务端是否要求关闭连接
+        private boolean closeAfterResponse;
+
+        //当前响应已读的字节数
+        private long responseBytes;
+
+        Worker(int index, InetSocketAddress address) {
+            this.address = address;
+            this.intervalNanos = rate > 0 ? (long) (connections * 1e9 / rate) : 0;
+            this.offsetNanos = intervalNanos * index / connections;
+            this.requests = new ByteBuffer[targets.size()];
+            for (int i = 0; i < requests.length; i++) {
+                requests[i] = ByteBuffer.wrap(targets.get(i).request).asReadOnlyBuffer();
+            }
+            this.readBuffer = bufferPool.acquire(READ_BUFFER_SIZE);
+        }
+
+        @Override
+        public void run() {
+            long sequence = 0;
+            try {
+                while (!stopped) {
+                    long intended;
+                    if (intervalNanos > 0) {
+                        intended = startNanos + offsetNanos + sequence++ * intervalNanos;
+                        if (intended >= endNanos) {
+                            break;
+                        }
+                        //落后于排定时间时不等待，立即发出，推迟的时间计入延迟
+                        long wait;
+                        while ((wait = intended - System.nanoTime()) > 0 && !stopped) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        if (stopped) {
+                            break;
+                        }
+                    } else {
+                        intended = System.nanoTime();
+                        if (intended >= endNanos) {
+                            break;
+                        }
+                    }
+                    exchange(intended);
+                }
+            } finally {
+                close();
+                bufferPool.release(readBuffer);
+            }
+        }
+
+        /**
+         * 发送一个请求并读完响应，出错时关闭连接，下次请求时重连
+         */
+        private void exchange(long intended) {
+            boolean measured = intended >= measureStartNanos;
+            try {
+                if (channel == null) {
+                    open();
+                }
+                ByteBuffer request = requests[nextTarget()];
+                request.rewind();
+                long sent = System.nanoTime();
+                while (request.hasRemaining()) {
+                    channel.write(request);
+                }
+                int status = readResponse();
+                long done = System.nanoTime();
+                if (measured) {
+                    completed.increment();
+                    bytesReceived.add(responseBytes);
+                    statusClasses[status >= 100 && status < 600 ? status / 100 : 0].increment();
+                    record(intended, sent, done);
+                }
+                if (closeAfterResponse) {
+                    close();
+                }
+            } catch (IOException e) {
+                close();
+                if (measured) {
+                    errors.increment();
+                }
+            }
+        }
+
+        private void open() throws IOException {
+            SocketChannel opened = SocketChannel.open();
+            opened.socket().setTcpNoDelay(true);
+            opened.connect(address);
+            readBuffer.clear();
+            channel = opened;
+            if (System.nanoTime() >= measureStartNanos) {
+                reconnects.increment();
+            }
+        }
+
+        void close() {
+            SocketChannel toClose = channel;
+            channel = null;
+            if (toClose != null) {
+                try {
+                    toClose.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        /**
+         * 读完一个响应，报文体只计数不保存
+         * 报文体的长度由Content-Length或分块编码确定，都没有时读到连接关闭为止
+         *
+         * @return 状态码
+         * @throws IOException 连接断开或响应无法解析
+         */
+        private int readResponse() throws IOException {
+            int headerEnd;
+            while ((headerEnd = indexOfHeaderEnd()) < 0) {
+                if (!readBuffer.hasRemaining()) {
+                    throw new IOException("Response header too large");
+                }
+                fill();
+            }
+            //此时readBuffer处于写模式，[0, position)为已读入的字节
+            int status = parseStatus();
+            long contentLength = -1;
+            boolean chunked = false;
+            closeAfterResponse = false;
+            int lineStart = indexOfCRLF(0, headerEnd + 2) + 2;
+            while (lineStart < headerEnd) {
+                int lineEnd = indexOfCRLF(lineStart, headerEnd + 2);
+                int colon = indexOf((byte) ':', lineStart, lineEnd);
+                if (colon > 0) {
+                    if (nameEquals(lineStart, colon, "content-length")) {
+                        contentLength = parseLength(ascii(colon + 1, lineEnd).trim(), 10);
+                    } else if (nameEquals(lineStart, colon, "transfer-encoding")) {
+                        chunked = ascii(colon + 1, lineEnd).toLowerCase().contains("chunked");
+                    } else if (nameEquals(lineStart, colon, "connection")) {
+                        closeAfterResponse = ascii(colon + 1, lineEnd).toLowerCase().contains("close");
+                    }
+                }
+                lineStart = lineEnd + 2;
+            }
+            responseBytes = headerEnd + 4;
+            consume(headerEnd + 4);
+
+            if (status < 200 || status == 204 || status == 304) {
+                return status;
+            }
+            if (chunked) {
+                skipChunked();
+            } else if (contentLength >= 0) {
+                skip(contentLength);
+            } else {
+                //没有长度信息，读到连接关闭为止
+                closeAfterResponse = true;
+                try {
+                    while (true) {
+                        responseBytes += readBuffer.position();
+                        readBuffer.clear();
+                        fill();
+                    }
+                } catch (EOFException eof) {
+                    //连接关闭，报文体结束
+                }
+            }
+            return status;
+        }
+
+        /**
+         * 跳过分块编码的报文体，包括最后的尾部字段
+         */
+        private void skipChunked() throws IOException {
+            while (true) {
+                int lineEnd;
+                while ((lineEnd = indexOfCRLF(0, readBuffer.position())) < 0) {
+                    if (!readBuffer.hasRemaining()) {
+                        throw new IOException("Chunk header too large");
+                    }
+                    fill();
+                }
+                String sizeLine = ascii(0, lineEnd);
+                int semicolon = sizeLine.indexOf(';');
+                long size = parseLength((semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim(), 16);
+                responseBytes += lineEnd + 2;
+                consume(lineEnd + 2);
+                if (size == 0) {
+                    break;
+                }
+                skip(size + 2);
+            }
+            //尾部字段，以空行结束
+            while (true) {
+                int lineEnd;
+                while ((lineEnd = indexOfCRLF(0, readBuffer.position())) < 0) {
+                    if (!readBuffer.hasRemaining()) {
+                        throw new IOException("Trailer too large");
+                    }
+                    fill();
+                }
+                responseBytes += lineEnd + 2;
+                consume(lineEnd + 2);
+                if (lineEnd == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return 解析出的非负长度
+         * @throws IOException 长度无法解析
+         */
+        private long parseLength(String s, int radix) throws IOException {
+            try {
+                long length = Long.parseLong(s, radix);
+                if (length >= 0) {
+                    return length;
+                }
+            } catch (NumberFormatException ignored) {
+            }
+            throw new IOException("Malformed length: " + s);
+        }
+
+        /**
+         * 跳过n个字节，缓冲区中不够时继续读入
+         */
+        private void skip(long n) throws IOException {
+            while (n > 0) {
+                if (readBuffer.position() == 0) {
+                    fill();
+                }
+                int step = (int) Math.min(n, readBuffer.position());
+                consume(step);
+                responseBytes += step;
+                n -= step;
+            }
+        }
+
+        /**
+         * 从连接读入数据到缓冲区，直到读到至少一个字节
+         */
+        private void fill() throws IOException {
+            int count;
+            do {
+                count = channel.read(readBuffer);
+            } while (count == 0);
+            if (count < 0) {
+                throw new EOFException();
+            }
+        }
+
+        /**
+         * 丢弃缓冲区开头的n个字节，其余字节移到开头
+         */
+        private void consume(int n) {
+            readBuffer.flip();
+            readBuffer.position(n);
+            readBuffer.compact();
+        }
+
+        private int indexOfHeaderEnd() {
+            int end = readBuffer.position();
+            for (int i = 0; i + 3 < end; i++) {
+                if (readBuffer.get(i) == '\r' && readBuffer.get(i + 1) == '\n'
+                        && readBuffer.get(i + 2) == '\r' && readBuffer.get(i + 3) == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int indexOfCRLF(int from, int end) {
+            for (int i = from; i + 1 < end; i++) {
+                if (readBuffer.get(i) == '\r' && readBuffer.get(i + 1) == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int indexOf(byte b, int from, int end) {
+            for (int i = from; i < end; i++) {
+                if (readBuffer.get(i) == b) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return 状态行中的状态码，无法解析时返回0
+         */
+        private int parseStatus() {
+            int space = indexOf((byte) ' ', 0, readBuffer.position());
+            if (space < 0 || space + 4 > readBuffer.position()) {
+                return 0;
+            }
+            int status = 0;
+            for (int i = space + 1; i < space + 4; i++) {
+                byte b = readBuffer.get(i);
+                if (b < '0' || b > '9') {
+                    return 0;
+                }
+                status = status * 10 + (b - '0');
+            }
+            return status;
+        }
+
+        /**
+         * 不区分大小写地比较报文头字段名
+         */
+        private boolean nameEquals(int from, int end, String lowerName) {
+            int length = end - from;
+            while (length > 0 && readBuffer.get(from + length - 1) == ' ') {
+                length--;
+            }
+            if (length != lowerName.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (Character.toLowerCase((char) readBuffer.get(from + i)) != lowerName.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String ascii(int from, int end) {
+            char[] chars = new char[end - from];
+            for (int i = from; i < end; i++) {
+                chars[i - from] = (char) (readBuffer.get(i) & 0xff);
+            }
+            return new String(chars);
+        }
+    }
+}
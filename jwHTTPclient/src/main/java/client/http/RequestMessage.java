@@ -7,10 +7,6 @@ class RequestMessage extends HTTPMessage {
     private HTTPMethod method;
     private String resource;
 
-    static {
-        set_property_split_ignore_case.add("If-Modified-Since".toLowerCase());
-    }
-
     private RequestMessage() {
         super();
     }
@@ -21,19 +17,20 @@ class RequestMessage extends HTTPMessage {
         this.resource = resource;
     }
 
+    /**
+     * 构造Request-Line
+     * Format = Method Request-URI HTTP-Version CRLF
+     *
+     * @return Request-Line
+     */
     @Override
-    public String toString() {
-        StringBuilder messageBuilder = new StringBuilder();
-
-        //构造Request-Line
-        //Format = Method Request-URI HTTP-Version CRLF
-        messageBuilder
-                .append(method.getMethodName()).append(" ")
-                .append(resource).append(" ")
-                .append(HTTP_VERSION)
-                .append(CRLF);
+    protected String getStartLine() {
+        return method.getMethodName() + " " + resource + " " + HTTP_VERSION + CRLF;
+    }
 
-        return buildContent(buildHeader(messageBuilder)).toString();
+    @Override
+    public String toString() {
+        return buildContent(buildHeader(new StringBuilder(getStartLine()))).toString();
     }
 
     public HTTPMethod getMethod() {
@@ -2,6 +2,7 @@ package server;
 
 import server.service.IService;
 import server.service.http.ServerHTTPService;
+import server.service.http.VirtualThreadHTTPService;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -25,7 +26,12 @@ class Server {
 
     public static void main(String[] args) {
         List<IService> startUpServices = new ArrayList<>();
-        startUpServices.add(new ServerHTTPService(8089));
+        //-Djwhttp.mode=virtual 时使用每连接一个虚拟线程的实现，默认使用NIO反应器实现
+        if ("virtual".equalsIgnoreCase(System.getProperty("jwhttp.mode"))) {
+            startUpServices.add(new VirtualThreadHTTPService(8089));
+        } else {
+            startUpServices.add(new ServerHTTPService(8089));
+        }
         Server server = new Server(startUpServices);
         server.run();
     }
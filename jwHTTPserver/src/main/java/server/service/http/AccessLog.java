@@ -0,0 +1,423 @@
+package server.service.http;
+
+import http.message.HeaderName;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步的访问日志，格式为common或combined，行末追加以微秒为单位的请求耗时
+ * 处理请求的线程只把记录放入无锁的环形缓冲区，由后台线程取出、格式化并成批写入文件
+ * 环形缓冲区满时丢弃记录并计数，请求处理永远不会因为写日志而阻塞
+ * 文件超过设定大小时轮转：access.log改名为access.log.1，原有的access.log.1改名为access.log.2，依此类推
+ * 按比例抽样记录，5xx的响应总是记录
+ */
+class AccessLog implements Runnable {
+    //环形缓冲区的容量，须为2的幂
+    private static final int RING_CAPACITY = 8192;
+
+    //写入文件的缓冲大小，也是一批写入的大致字节数
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    //没有新记录时的等待时间，也是写入文件的最大延迟
+    private static final long IDLE_PARK_NANOS = 50_000_000L;
+
+    //写入失败后重新打开日志文件的最长间隔
+    private static final long MAX_REOPEN_BACKOFF_NANOS = 30_000_000_000L;
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US).withZone(ZoneId.systemDefault());
+
+    private final boolean enabled;
+    private final boolean combined;
+    private final double sampleRate;
+    private final File file;
+    private final long maxFileSize;
+    private final int maxFiles;
+
+    private final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(RING_CAPACITY);
+
+    //生产者认领的下一个位置
+    private final AtomicLong tail = new AtomicLong();
+
+    //消费者读取的下一个位置，只由后台线程修改
+    private volatile long head;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile boolean closed;
+    private Thread writerThread;
+
+    //以下字段只在后台线程中使用
+    //写入失败后为null，直到重新打开成功；期间记录留在环形缓冲区中，缓冲区满后丢弃
+    private Writer writer;
+    //已写入文件的UTF-8字节数
+    private long fileSize;
+    private long reopenAtNanos;
+    private long reopenBackoffNanos;
+    private final StringBuilder line = new StringBuilder(256);
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedTime;
+
+    /**
+     * @param config 服务的可配置参数，访问日志路径为空字符串时不记录
+     */
+    AccessLog(HTTPServiceConfig config) {
+        this.enabled = !config.getAccessLogPath().isEmpty();
+        this.combined = "combined".equals(config.getAccessLogFormat());
+        this.sampleRate = config.getAccessLogSampleRate();
+        this.file = enabled ? new File(config.getAccessLogPath()) : null;
+        this.maxFileSize = config.getAccessLogMaxSize();
+        this.maxFiles = config.getAccessLogMaxFiles();
+    }
+
+    /**
+     * 打开日志文件并启动后台线程，进程退出时写完缓冲区中剩余的记录
+     *
+     * @throws IOException 打开日志文件失败
+     */
+    void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create access log directory " + dir);
+        }
+        open();
+        writerThread = new Thread(this, "jwhttp-access-log");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /**
+     * 开始记录一个请求，未启用或未被抽中时返回null
+     *
+     * @param remote     客户端地址
+     * @param req        请求，请求格式错误时为null
+     * @param res        响应
+     * @param startNanos 收到请求第一个字节的时间（System.nanoTime）
+     * @return 记录，响应写出后调用finish提交
+     */
+    Entry begin(String remote, RequestMessage req, ResponseMessage res, long startNanos) {
+        if (!enabled) {
+            return null;
+        }
+        int status = res.getStatus().getStatus_code();
+        if (status < 500 && sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return null;
+        }
+        return new Entry(this, remote, req, status, res.getBodyLength(), startNanos);
+    }
+
+    /**
+     * @return 因环形缓冲区已满而丢弃的记录数
+     */
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * 放入环形缓冲区，由多个线程同时调用
+     */
+    private void append(Entry entry) {
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed - head >= RING_CAPACITY) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(claimed, claimed + 1));
+        ring.set((int) claimed & (RING_CAPACITY - 1), entry);
+    }
+
+    @Override
+    public void run() {
+        long lastFlush = System.nanoTime();
+        while (true) {
+            boolean drained = false;
+            if (writer != null || reopen()) {
+                try {
+                    drained = drain();
+                    long now = System.nanoTime();
+                    if (!drained || now - lastFlush > IDLE_PARK_NANOS) {
+                        writer.flush();
+                        lastFlush = now;
+                    }
+                } catch (IOException e) {
+                    //放弃当前的文件，之后按退避间隔重新打开，不在每次循环时重复失败
+                    e.printStackTrace();
+                    closeWriter();
+                    drained = false;
+                }
+            }
+            if (!drained) {
+                if (closed) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        closeWriter();
+    }
+
+    /**
+     * 写入失败后重新打开日志文件，连续失败时间隔加倍，最长为MAX_REOPEN_BACKOFF_NANOS
+     *
+     * @return 是否已重新打开
+     */
+    private boolean reopen() {
+        long now = System.nanoTime();
+        if (now - reopenAtNanos < 0) {
+            return false;
+        }
+        try {
+            open();
+            reopenBackoffNanos = 0;
+            return true;
+        } catch (IOException e) {
+            reopenBackoffNanos = Math.min(MAX_REOPEN_BACKOFF_NANOS, Math.max(IDLE_PARK_NANOS, reopenBackoffNanos * 2));
+            reopenAtNanos = now + reopenBackoffNanos;
+            return false;
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writer = null;
+    }
+
+    /**
+     * 取出环形缓冲区中已发布的记录并写入文件
+     *
+     * @return 是否取出了记录
+     */
+    private boolean drain() throws IOException {
+        boolean drained = false;
+        while (true) {
+            int index = (int) head & (RING_CAPACITY - 1);
+            Entry entry = ring.get(index);
+            if (entry == null) {
+                //位置为空，或已被认领但尚未发布
+                return drained;
+            }
+            ring.lazySet(index, null);
+            head++;
+            drained = true;
+            format(entry);
+            writer.append(line);
+            fileSize += utf8Length(line);
+            if (maxFileSize > 0 && fileSize >= maxFileSize) {
+                rotate();
+            }
+        }
+    }
+
+    private void format(Entry entry) {
+        line.setLength(0);
+        line.append(entry.remote).append(" - - [").append(time(entry.startMillis)).append("] \"");
+        if (entry.method == null) {
+            line.append('-');
+        } else {
+            line.append(entry.method).append(' ');
+            quote(entry.resource);
+            line.append(entry.http10 ? " HTTP/1.0" : " HTTP/1.1");
+        }
+        line.append("\" ").append(entry.status).append(' ');
+        if (entry.bodyLength > 0) {
+            line.append(entry.bodyLength);
+        } else {
+            line.append('-');
+        }
+        if (combined) {
+            line.append(" \"");
+            quote(entry.referer);
+            line.append("\" \"");
+            quote(entry.userAgent);
+            line.append('"');
+        }
+        line.append(' ').append(entry.latencyNanos / 1000).append('\n');
+    }
+
+    /**
+     * @return 按UTF-8编码后的字节数，不成对的代理字符按编码器替换成的'?'计算
+     */
+    private static long utf8Length(CharSequence s) {
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 同一秒内的记录共用格式化好的时间
+     */
+    private String time(long millis) {
+        long second = Math.floorDiv(millis, 1000);
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTime = TIME_FORMAT.format(Instant.ofEpochSecond(second));
+        }
+        return cachedTime;
+    }
+
+    /**
+     * 写出双引号内的字段，空值写为"-"，双引号、反斜杠和控制字符转义
+     */
+    private void quote(String value) {
+        if (value == null || value.isEmpty()) {
+            line.append('-');
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20 || c == 0x7f) {
+                line.append("\\x").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+            } else {
+                line.append(c);
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8),
+                WRITE_BUFFER_SIZE
+        );
+        fileSize = file.length();
+    }
+
+    /**
+     * 轮转日志文件，重新打开失败时writer为null，由run按退避间隔重试
+     */
+    private void rotate() throws IOException {
+        closeWriter();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File from = rotated(i);
+            if (!from.exists()) {
+                continue;
+            }
+            if (i == maxFiles - 1) {
+                //最旧的文件超出保留个数，直接删除
+                from.delete();
+            } else {
+                from.renameTo(rotated(i + 1));
+            }
+        }
+        if (maxFiles > 1) {
+            file.renameTo(rotated(1));
+        } else {
+            file.delete();
+        }
+        open();
+    }
+
+    private File rotated(int index) {
+        return new File(file.getPath() + "." + index);
+    }
+
+    /**
+     * 通知后台线程写完剩余的记录后关闭文件，最多等待2秒
+     */
+    void close() {
+        if (!enabled || closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 一次请求的访问记录，响应开始写出前创建，写出完毕时提交
+     */
+    static final class Entry {
+        private final AccessLog log;
+        final String remote;
+        final long startMillis;
+        final long startNanos;
+        final String method;
+        final String resource;
+        final boolean http10;
+        final String referer;
+        final String userAgent;
+        final int status;
+        final long bodyLength;
+        long latencyNanos;
+
+        private Entry(AccessLog log, String remote, RequestMessage req, int status, long bodyLength, long startNanos) {
+            this.log = log;
+            this.remote = remote;
+            this.startNanos = startNanos;
+            this.startMillis = System.currentTimeMillis() - (System.nanoTime() - startNanos) / 1_000_000;
+            if (req != null) {
+                this.method = req.getMethod().getMethodName();
+                this.resource = req.getResource();
+                this.http10 = req.isHTTP10();
+                this.referer = req.getField(HeaderName.REFERER);
+                this.userAgent = req.getField(HeaderName.USER_AGENT);
+            } else {
+                this.method = null;
+                this.resource = null;
+                this.http10 = false;
+                this.referer = null;
+                this.userAgent = null;
+            }
+            this.status = status;
+            this.bodyLength = bodyLength;
+        }
+
+        /**
+         * 响应写出完毕（或连接关闭）时提交记录
+         *
+         * @param endNanos 写出完毕的时间（System.nanoTime）
+         */
+        void finish(long endNanos) {
+            latencyNanos = endNanos - startNanos;
+            log.append(this);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package server.service.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Range请求头的解析
+ * Format =
+ * byte-ranges-specifier = "bytes=" byte-range-set
+ * byte-range-set        = 1#( byte-range-spec | suffix-byte-range-spec )
+ * byte-range-spec       = first-byte-pos "-" [ last-byte-pos ]
+ * suffix-byte-range-spec = "-" suffix-length
+ */
+final class ByteRanges {
+    //一个请求允许的最多区间数，更多时忽略Range，回应整个资源
+    static final int MAX_RANGES = 16;
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    private ByteRanges() {
+    }
+
+    /**
+     * 解析Range请求头
+     *
+     * @param header Range请求头的值
+     * @param length 资源长度
+     * @return 可满足的区间列表，每个区间为{起始位置, 结束位置（含）}；没有可满足的区间时返回空列表（应回应416）；
+     * 格式错误或区间过多时返回null（应忽略Range，回应整个资源）
+     */
+    static List<long[]> parse(String header, long length) {
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return null;
+        }
+        String[] specs = value.substring(BYTES_UNIT.length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>(specs.length);
+        int specCount = 0;
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                if (spec.isEmpty()) {
+                    continue;
+                }
+                specCount++;
+                int dash = spec.indexOf('-');
+                if (dash < 0) {
+                    return null;
+                }
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                if (first.isEmpty()) {
+                    //最后suffix-length个字节
+                    long suffix = Long.parseLong(last);
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if (suffix > 0 && length > 0) {
+                        ranges.add(new long[]{Math.max(0, length - suffix), length - 1});
+                    }
+                    continue;
+                }
+                long start = Long.parseLong(first);
+                long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                if (start < length) {
+                    ranges.add(new long[]{start, Math.min(end, length - 1)});
+                }
+            }
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+        //至少要有一个区间
+        return specCount == 0 ? null : ranges;
+    }
+}
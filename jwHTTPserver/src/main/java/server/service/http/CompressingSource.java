@@ -0,0 +1,122 @@
+package server.service.http;
+
+import http.message.ContentSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 边读取边压缩的流式报文体，压缩后的长度事先未知，因此按chunked格式分块发送
+ * 每次只读取一段原始数据交给Deflater，输出多少就写出多少，内存占用与资源大小无关
+ * gzip格式在deflate数据前后加上固定的文件头和CRC32、长度组成的文件尾；deflate格式即zlib格式
+ */
+class CompressingSource implements ContentSource {
+    //gzip文件头：魔数、压缩方法deflate、无标志、无修改时间、无额外标志、未知操作系统
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private final InputStream in;
+    private final boolean gzip;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+
+    private final byte[] input = new byte[8192];
+    private final byte[] output = new byte[8192];
+
+    private boolean headerWritten;
+    private boolean inputFinished;
+    private boolean trailerWritten;
+
+    /**
+     * @param in     原始数据，读完后由close关闭
+     * @param coding 压缩编码，gzip或deflate
+     */
+    CompressingSource(InputStream in, String coding) {
+        this.in = in;
+        this.gzip = ContentCoding.GZIP.equals(coding);
+        //gzip自己加文件头和文件尾，deflate需要zlib的包装
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+        this.headerWritten = !gzip;
+    }
+
+    /**
+     * 把整个文件压缩到内存中，用于构建缓存项
+     *
+     * @param path   文件路径
+     * @param coding 压缩编码
+     * @return 压缩后的字节
+     * @throws IOException 读取文件失败
+     */
+    static byte[] compress(Path path, String coding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        try (CompressingSource source = new CompressingSource(Files.newInputStream(path), coding)) {
+            while (source.read(buffer) >= 0) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    /**
+     * 缓冲区的剩余空间不能少于gzip文件头的长度
+     */
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        if (!headerWritten) {
+            buffer.put(GZIP_HEADER);
+            headerWritten = true;
+            return GZIP_HEADER.length;
+        }
+        while (!deflater.finished()) {
+            if (deflater.needsInput() && !inputFinished) {
+                int count = in.read(input);
+                if (count < 0) {
+                    inputFinished = true;
+                    deflater.finish();
+                } else {
+                    crc.update(input, 0, count);
+                    deflater.setInput(input, 0, count);
+                }
+            }
+            int length = deflater.deflate(output, 0, Math.min(output.length, buffer.remaining()));
+            if (length > 0) {
+                buffer.put(output, 0, length);
+                return length;
+            }
+        }
+        if (gzip && !trailerWritten) {
+            //文件尾：原始数据的CRC32和长度（模2^32），均为小端序
+            long crcValue = crc.getValue();
+            long size = deflater.getBytesRead();
+            for (int i = 0; i < 4; i++) {
+                buffer.put((byte) (crcValue >>> (i * 8)));
+            }
+            for (int i = 0; i < 4; i++) {
+                buffer.put((byte) (size >>> (i * 8)));
+            }
+            trailerWritten = true;
+            return GZIP_TRAILER_LENGTH;
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        //释放Deflater占用的本地内存
+        deflater.end();
+        in.close();
+    }
+}
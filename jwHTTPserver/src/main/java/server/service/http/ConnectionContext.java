@@ -0,0 +1,95 @@
+package server.service.http;
+
+import http.buffer.BufferPool;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 每个连接的上下文，作为SelectionKey的attachment
+ * 保存跨越多次可读事件的解析状态以及待写出的响应
+ * 读缓冲区只在其中有未处理的字节时才持有，处理完即归还缓冲区池，空闲的长连接不占用缓冲区
+ */
+class ConnectionContext {
+    //连接读缓冲区的大小，一次可读事件尽量读完整个请求
+    static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final BufferPool pool;
+
+    //连接的读缓冲区，尚未处理的请求字节保留在其中，没有未处理的字节时为null
+    ByteBuffer readBuffer;
+
+    //连接的请求解析器
+    final RequestParser parser;
+
+    //标志该连接的请求正在处理中
+    volatile boolean handling;
+
+    //最后一次有请求到达的时间，由所属Handler的时间轮检查是否空闲超时
+    long lastActive;
+
+    //待写出的响应
+    final WriteQueue outbound;
+
+    //写出队列中的响应后是否关闭连接
+    boolean closeAfterWrite;
+
+    //因待写出的字节超过高水位而暂停解析，读缓冲区中还有未处理的请求
+    boolean suspended;
+
+    //该连接上已解析完成的请求数
+    int requestCount;
+
+    //正在解析的请求收到第一个字节的时间（System.nanoTime）
+    long parseStart;
+
+    //客户端地址，用于访问日志
+    final String remoteAddress;
+
+    ConnectionContext(RequestParser parser, BufferPool pool, Metrics metrics, String remoteAddress) {
+        this.parser = parser;
+        this.pool = pool;
+        this.remoteAddress = remoteAddress;
+        this.outbound = new WriteQueue(pool, metrics);
+    }
+
+    /**
+     * @return 读缓冲区，没有持有时从缓冲区池借出
+     */
+    ByteBuffer leaseReadBuffer() {
+        if (readBuffer == null) {
+            readBuffer = pool.acquire(READ_BUFFER_SIZE);
+        }
+        return readBuffer;
+    }
+
+    /**
+     * 读缓冲区（处于写模式）中的字节已全部处理时归还给缓冲区池
+     */
+    void releaseReadBufferIfEmpty() {
+        if (readBuffer != null && readBuffer.position() == 0) {
+            pool.release(readBuffer);
+            readBuffer = null;
+        }
+    }
+
+    /**
+     * 把响应加入待写出队列
+     *
+     * @param res      响应
+     * @param logEntry 响应的访问记录，不记录时为null
+     */
+    void addResponse(ResponseMessage res, AccessLog.Entry logEntry) {
+        outbound.add(res, logEntry);
+    }
+
+    /**
+     * 连接关闭时调用，丢弃待写出的响应，关闭尚未传输完毕的文件报文体，删除尚未接收完整的上传报文体
+     * 借出的缓冲区全部归还
+     */
+    void closeContent() {
+        outbound.clear();
+        parser.reset();
+        pool.release(readBuffer);
+        readBuffer = null;
+    }
+}
@@ -0,0 +1,67 @@
+package server.service.http;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 判断服务是否处于连接（文件描述符）压力之下
+ * 打开的连接数达到上限，或进程已用的文件描述符接近系统限制时视为有压力
+ * 有压力时响应后不再保持长连接，空闲的长连接也提前断开，为新连接腾出文件描述符
+ * 该类是线程安全的，由所有Handler线程或连接线程共用
+ */
+class ConnectionPressure {
+    //已用文件描述符占上限的比例达到此值时视为有压力
+    private static final double FD_THRESHOLD = 0.9;
+
+    //文件描述符用量的采样间隔，读取用量需要遍历/proc/self/fd，不能每次都读
+    private static final long FD_SAMPLE_INTERVAL = 1000;
+
+    //有压力时，空闲超过此毫秒数的长连接被提前断开
+    static final long SHED_IDLE_MILLIS = 1000;
+
+    private final int maxConnections;
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    //不支持读取文件描述符用量的平台上为null，只按连接数判断
+    private final com.sun.management.UnixOperatingSystemMXBean unixBean;
+
+    private volatile long fdSampledAt;
+    private volatile boolean fdPressure;
+
+    ConnectionPressure(int maxConnections) {
+        this.maxConnections = maxConnections;
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        this.unixBean = bean instanceof com.sun.management.UnixOperatingSystemMXBean
+                ? (com.sun.management.UnixOperatingSystemMXBean) bean
+                : null;
+    }
+
+    void opened() {
+        openConnections.incrementAndGet();
+    }
+
+    void closed() {
+        openConnections.decrementAndGet();
+    }
+
+    int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * @param now 当前时间
+     * @return 是否处于压力之下
+     */
+    boolean isUnderPressure(long now) {
+        if (openConnections.get() >= maxConnections) {
+            return true;
+        }
+        if (unixBean != null && now - fdSampledAt >= FD_SAMPLE_INTERVAL) {
+            //多个线程同时采样时结果相同，不需要加锁
+            fdSampledAt = now;
+            fdPressure = unixBean.getOpenFileDescriptorCount() >= unixBean.getMaxFileDescriptorCount() * FD_THRESHOLD;
+        }
+        return fdPressure;
+    }
+}
@@ -0,0 +1,66 @@
+package server.service.http;
+
+/**
+ * 响应报文体压缩编码的协商
+ * Format =
+ * Accept-Encoding = #( codings [ ";" "q" "=" qvalue ] )
+ * codings         = ( content-coding | "*" )
+ */
+final class ContentCoding {
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private ContentCoding() {
+    }
+
+    /**
+     * 根据Accept-Encoding选择压缩编码，同等权重时优先gzip
+     *
+     * @param acceptEncoding Accept-Encoding请求头的值，没有时为空字符串
+     * @return gzip或deflate，不压缩时返回null
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding.isEmpty()) {
+            return null;
+        }
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+        for (String element : acceptEncoding.split(",")) {
+            String[] params = element.split(";");
+            String coding = params[0].trim().toLowerCase();
+            float q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        q = Float.parseFloat(param.substring(2).trim());
+                    } catch (NumberFormatException nfe) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                gzip = q;
+            } else if (coding.equals(DEFLATE)) {
+                deflate = q;
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        //没有单独列出的编码取"*"的权重
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        if (deflate > 0) {
+            return DEFLATE;
+        }
+        return null;
+    }
+}
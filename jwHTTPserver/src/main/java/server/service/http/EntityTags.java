@@ -0,0 +1,93 @@
+package server.service.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 资源的强实体标签，由文件内容的摘要生成
+ * 每个文件版本只在建立ResourceIndex的索引项时计算一次摘要，处理请求时不再读取文件
+ * Format =
+ * entity-tag = [ weak ] opaque-tag
+ * weak       = "W/"
+ * opaque-tag = DQUOTE *etagc DQUOTE
+ */
+class EntityTags {
+    //摘要截取的字节数，128位足以区分同一资源的不同版本
+    private static final int TAG_BYTES = 16;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private EntityTags() {
+    }
+
+    /**
+     * 计算资源内容的强实体标签
+     *
+     * @param resourcePath 资源路径
+     * @return 带双引号的实体标签
+     * @throws IOException 读取资源失败
+     */
+    static String digest(Path resourcePath) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(resourcePath)) {
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                md.update(buffer, 0, count);
+            }
+        }
+        byte[] hash = md.digest();
+        StringBuilder sb = new StringBuilder(TAG_BYTES * 2 + 2).append('"');
+        for (int i = 0; i < TAG_BYTES; i++) {
+            sb.append(HEX[(hash[i] >> 4) & 0xf]).append(HEX[hash[i] & 0xf]);
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * 压缩后的报文体是资源的另一种表示，实体标签加上压缩编码以区别于原始字节
+     *
+     * @param tag    资源原始字节的实体标签
+     * @param coding 压缩编码，不压缩时为null
+     * @return 该表示的实体标签
+     */
+    static String variant(String tag, String coding) {
+        return coding == null ? tag : tag.substring(0, tag.length() - 1) + "-" + coding + '"';
+    }
+
+    /**
+     * 判断If-Match或If-None-Match中是否有与当前实体标签匹配的项
+     *
+     * @param header 请求头的值，逗号分隔的实体标签列表或"*"
+     * @param tag    当前表示的实体标签
+     * @param strong 是否强比较，强比较时弱标签总是不匹配
+     * @return 是否匹配
+     */
+    static boolean matches(String header, String tag, boolean strong) {
+        for (String element : header.split(",")) {
+            String candidate = element.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                if (strong) {
+                    continue;
+                }
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,610 @@
+package server.service.http;
+
+import http.date.HTTPDate;
+import http.message.ContentSource;
+import http.message.HTTPMessage;
+import http.message.HeaderName;
+import http.method.HTTPMethod;
+import http.mime.MimeType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * HTTP请求的业务处理类，负责根据解析完成的请求生成响应
+ * 与连接的I/O模型无关，NIO反应器模式和每连接一个线程的模式共用同一份业务逻辑
+ * 该类是线程安全的，可以被多个Handler线程或工作线程同时调用
+ */
+class HTTPRequestHandler {
+    //记录的时间格式
+    private static final DateTimeFormatter LOG_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    //接收的文件放置的文件夹
+    private Path receiveContentDir;
+
+    //服务器的名字
+    private String serverName = "JiWangHTTPServer/1.0";
+
+    //公共资源的响应缓存，为null时不启用
+    private ResponseCache responseCache;
+
+    //请求报文体允许的最大字节数
+    private long maxBodySize;
+
+    //是否压缩文本类型的响应，以及参与压缩的最小资源大小
+    private boolean compression;
+    private long compressMinSize;
+
+    //public文件夹中资源的索引，启动时建立
+    private ResourceIndex resourceIndex;
+
+    //长连接的空闲超时（毫秒）和每个长连接最多处理的请求数，写入Keep-Alive响应头
+    private long idleTimeout;
+    private int maxKeepAliveRequests;
+
+    //服务的运行指标，在metricsPath上输出，路径为空字符串时不输出
+    private Metrics metrics;
+    private String metricsPath;
+
+    //是否输出info级别的记录
+    private boolean logInfo;
+
+    //公共资源所在的文件夹，为空字符串时使用classpath中的public文件夹
+    private String resourceDir;
+
+    //保存上传文件的文件夹
+    private String receiveDir;
+
+    HTTPRequestHandler(HTTPServiceConfig config) {
+        maxBodySize = config.getMaxBodySize();
+        compression = config.isCompression();
+        compressMinSize = config.getCompressMinSize();
+        idleTimeout = config.getIdleTimeout();
+        maxKeepAliveRequests = config.getMaxKeepAliveRequests();
+        metricsPath = config.getMetricsPath();
+        logInfo = config.isLogEnabled(HTTPServiceConfig.LogLevel.INFO);
+        resourceDir = config.getResourceDir();
+        receiveDir = config.getReceiveDir();
+        if (config.getCacheCapacity() > 0) {
+            responseCache = new ResponseCache(
+                    config.getCacheCapacity(),
+                    config.getCacheMaxEntrySize(),
+                    config.isCacheOffHeap()
+            );
+        }
+    }
+
+    /**
+     * 无参的初始化方法，创建接收文件的文件夹，建立公共资源的索引
+     *
+     * @throws IOException 创建文件夹或遍历公共资源失败
+     */
+    void init() throws IOException {
+        receiveContentDir = Paths.get(receiveDir).toAbsolutePath();
+        if (!Files.exists(receiveContentDir)) {
+            Files.createDirectories(receiveContentDir);
+        }
+        log("Set receive directory to " + receiveContentDir.toString());
+        //服务器公共资源默认放在classpath的public文件夹下
+        resourceIndex = ResourceIndex.build(resourceDir.isEmpty()
+                ? this.getClass().getResource("/public/")
+                : Paths.get(resourceDir).toAbsolutePath().toUri().toURL());
+        log("Indexed " + resourceIndex.size() + " public resource paths"
+                + (resourceIndex.isWatching() ? ", watching for changes" : ""));
+    }
+
+    String getServerName() {
+        return serverName;
+    }
+
+    void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return 新连接使用的请求解析器，POST请求的报文体由解析器直接写入接收文件夹下的临时文件
+     */
+    RequestParser newParser() {
+        return new RequestParser(maxBodySize, this::openBody);
+    }
+
+    /**
+     * 报文头解析完成时决定报文体的去向
+     * 只有POST请求的报文体会被保存，其余请求的报文体业务方法不关心，直接丢弃
+     *
+     * @param req    已解析完报文头的请求
+     * @param length 报文体长度
+     * @return 报文体的去向
+     * @throws IOException 创建临时文件失败
+     */
+    private RequestParser.BodySink openBody(RequestMessage req, long length) throws IOException {
+        if (req.getMethod() != HTTPMethod.POST) {
+            return RequestParser.BodySink.DISCARD;
+        }
+        //临时文件与最终位置在同一个文件系统上，接收完成后可以直接移动
+        UploadFile upload = UploadFile.create(receiveContentDir);
+        req.setUpload(upload);
+        return upload;
+    }
+
+    /**
+     * 决定响应之后是否保持连接，并设置相应的Connection和Keep-Alive响应头
+     * 请求方要求关闭、连接上的请求数达到上限或服务处于连接压力之下时，响应后关闭连接
+     *
+     * @param req           请求
+     * @param res           该请求的响应
+     * @param served        连接上已处理的请求数，包括本次
+     * @param underPressure 服务是否处于连接压力之下
+     * @return 是否保持连接
+     */
+    boolean keepAlive(RequestMessage req, ResponseMessage res, int served, boolean underPressure) {
+        if (!req.wantsKeepAlive() || served >= maxKeepAliveRequests || underPressure) {
+            res.setProperty("Connection", "close");
+            return false;
+        }
+        if (req.isHTTP10()) {
+            //HTTP/1.0默认不保持长连接，需要明确告知
+            res.setProperty("Connection", "keep-alive");
+        }
+        res.setProperty(
+                "Keep-Alive",
+                "timeout=" + Math.max(1, idleTimeout / 1000) + ", max=" + (maxKeepAliveRequests - served)
+        );
+        return true;
+    }
+
+    /**
+     * @return 响应缓存，未启用时为null
+     */
+    ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * 打印记录
+     *
+     * @param s 记录
+     */
+    private void log(String s) {
+        if (!logInfo) {
+            return;
+        }
+        System.out.println(
+                '[' + this.getClass().getSimpleName() + " - "
+                        + LocalDateTime.now().format(LOG_TIME_FORMAT) + "] "
+                        + s
+        );
+    }
+
+    /**
+     * 业务方法，负责处理请求内容
+     *
+     * @param req 解析完成的请求
+     * @return 响应，以文件作为报文体时由调用方负责关闭文件通道
+     */
+    ResponseMessage business(RequestMessage req) {
+        ResponseMessage res = new ResponseMessage(200);
+
+        HTTPMethod reqMethod = req.getMethod();
+        String resource = req.getResource();
+        //请求方不能接收原始字节的报文体时，非text类型的报文体按旧格式进行Base64编解码
+        boolean binary = req.acceptsBinaryBody();
+
+        if (reqMethod == HTTPMethod.GET && metrics != null && !metricsPath.isEmpty() && resource.equals(metricsPath)) {
+            res = metrics.toResponse();
+            res.setProperty("Date", HTTPDate.now());
+            res.setProperty("Server", serverName);
+            return res;
+        }
+
+        //一次散列查找得到资源的元数据，索引中没有的资源不存在
+        ResourceIndex.Resource indexed = resourceIndex.get(resource);
+        if (indexed == null) {
+            req.discardUpload();
+            res = new ResponseMessage(404);
+            res.setProperty(
+                    "Date",
+                    HTTPDate.now()
+            );
+            return res;
+        }
+        if (reqMethod == HTTPMethod.POST) {
+            Path resourcePath = receiveContentDir.resolve(resource.equals("/") ? "" : resource);
+            if (!Files.exists(resourcePath)) {
+                res = new ResponseMessage(404);
+            } else if (!Files.isDirectory(resourcePath)) {
+                res = new ResponseMessage(405);
+            } else {
+                String content_type = req.getField(HeaderName.CONTENT_TYPE);
+                try {
+                    String filename = putFile(content_type, req.getUpload(), resource, !binary);
+                    //回应资源被保存的位置
+                    res.setProperty("content-location", resource + filename);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    res = new ResponseMessage(500);
+                }
+            }
+            //未被保存的上传报文体不再保留
+            req.discardUpload();
+        } else {
+            try {
+                Path resourcePath = indexed.path;
+                if (indexed.directory) {
+                    if (indexed == resourceIndex.getRoot()) {
+                        res = new ResponseMessage(301);
+                        res.setProperty(
+                                "Location",
+                                "http://127.0.0.1:8089/index.html"
+                        );
+                    } else {
+                        res = new ResponseMessage(404);
+                    }
+                } else {
+                    boolean needContent = true;
+                    long last_modified = indexed.lastModified;
+                    String contentType = indexed.contentType;
+                    //只有原样发送的文件才支持Range，Base64编码后的报文体和jar包中的资源总是整个发送
+                    boolean rangeable = isRangeable(resourcePath, contentType, binary);
+                    //文本类型且不太小的资源按Accept-Encoding协商压缩，响应因此随Accept-Encoding而变化
+                    boolean negotiable = compression
+                            && MimeType.isCompressible(contentType)
+                            && indexed.size >= compressMinSize;
+                    String coding = negotiable ? ContentCoding.negotiate(req.getField(HeaderName.ACCEPT_ENCODING)) : null;
+                    //资源原始字节的实体标签，建立索引项时已经计算好
+                    String etag = indexed.etag;
+                    String variantTag = EntityTags.variant(etag, coding);
+
+                    String ifMatch = req.getField(HeaderName.IF_MATCH);
+                    String ifNoneMatch = req.getField(HeaderName.IF_NONE_MATCH);
+                    if (!ifMatch.isEmpty() && !EntityTags.matches(ifMatch, variantTag, true)) {
+                        res = new ResponseMessage(412);
+                        needContent = false;
+                    } else if (!ifNoneMatch.isEmpty()) {
+                        //有If-None-Match时忽略If-Modified-Since
+                        if (EntityTags.matches(ifNoneMatch, variantTag, false)) {
+                            res = new ResponseMessage(304);
+                            needContent = false;
+                        }
+                    } else {
+                        //时间格式遵循RFC1123时间规范，无法解析时视为没有此参数
+                        long since = HTTPDate.parse(req.getField(HeaderName.IF_MODIFIED_SINCE));
+                        // HTTP时间只精确到秒，因此把资源的最晚修改时间截断到秒再与since比较
+                        if (since >= 0 && last_modified / 1000 * 1000 <= since) {
+                            res = new ResponseMessage(304);
+                            needContent = false;
+                        }
+                    }
+                    if (needContent && rangeable && !req.getField(HeaderName.RANGE).isEmpty()
+                            && ifRangeMatches(req.getField(HeaderName.IF_RANGE), etag, last_modified)) {
+                        ResponseMessage ranged = rangeResponse(indexed, req.getField(HeaderName.RANGE));
+                        if (ranged != null) {
+                            //区间总是针对未压缩的原始字节
+                            res = ranged;
+                            needContent = false;
+                            coding = null;
+                            variantTag = etag;
+                        }
+                    }
+                    if (needContent && responseCache != null
+                            && storedSize(indexed, binary) <= responseCache.getMaxEntrySize()) {
+                        //先从响应缓存中获取，缓存项中已经包含除Date之外的全部报文头和报文体
+                        //同一资源的原始字节、压缩后和Base64格式分别缓存
+                        String cacheKey = resource
+                                + (coding == null ? "" : "#" + coding)
+                                + (binary ? "" : "#" + HTTPMessage.BODY_ENCODING_BASE64);
+                        String entryCoding = coding;
+                        String entryTag = variantTag;
+                        //索引项就是资源的版本，文件在同一修改时间内被改写也会得到新的索引项
+                        ResponseCache.Entry entry = responseCache.get(
+                                cacheKey,
+                                indexed,
+                                () -> loadCacheEntry(indexed, binary, rangeable, negotiable, entryCoding, entryTag)
+                        );
+                        if (entry != null) {
+                            //Date报文头由预先编码好的字节追加
+                            return ResponseMessage.fromCache(entry);
+                        }
+                    }
+                    res.setProperty(
+                            "Last-Modified",
+                            HTTPDate.format(last_modified)//资源最后一次修改时间
+                    );
+                    res.setProperty(
+                            "ETag",
+                            variantTag//由资源内容的摘要生成的强实体标签
+                    );
+                    if (negotiable) {
+                        res.setProperty("Vary", "Accept-Encoding");
+                    }
+                    if (needContent) {
+                        setContent(res, indexed, binary, coding, false);
+                    }
+                    if (rangeable && coding == null) {
+                        res.setProperty("Accept-Ranges", "bytes");
+                    }
+                }
+            } catch (NoSuchFileException nsfe) {
+                //文件已被删除，索引尚未更新
+                res = new ResponseMessage(404);
+            } catch (IOException ioe) {
+                res = new ResponseMessage(500);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        res.setProperty(
+                "Date",
+                HTTPDate.now()
+        );
+        res.setProperty(
+                "Server",
+                serverName
+        );
+        if (binary) {
+            res.setProperty(HTTPMessage.BODY_ENCODING, HTTPMessage.BODY_ENCODING_BINARY);
+        }
+        return res;
+    }
+
+    /**
+     * 设置资源的Content-Type和报文体
+     * 需要压缩时优先使用预先压缩好的.gz文件，没有时由CompressingSource压缩
+     *
+     * @param res      响应
+     * @param indexed  资源的索引项
+     * @param binary   请求方是否能接收原始字节的报文体
+     * @param coding   压缩编码，不压缩时为null
+     * @param inMemory 是否必须把报文体读入内存，否则尽可能由FileChannel直接传输或逐段读取
+     * @throws IOException 读取资源失败
+     */
+    private void setContent(ResponseMessage res, ResourceIndex.Resource indexed, boolean binary,
+                            String coding, boolean inMemory) throws IOException {
+        Path resourcePath = indexed.path;
+        String contentType = indexed.contentType;
+        res.setProperty(
+                "Content-Type",
+                contentType
+        );
+        if (coding != null) {
+            res.setProperty("Content-Encoding", coding);
+            ResourceIndex.Resource precompressed = precompressed(indexed, coding);
+            if (precompressed != null) {
+                indexed = precompressed;
+                resourcePath = precompressed.path;
+            } else if (inMemory) {
+                res.setContent(CompressingSource.compress(resourcePath, coding));
+                return;
+            } else {
+                //压缩后的长度事先未知，按chunked格式边压缩边发送
+                res.setContentSource(new CompressingSource(Files.newInputStream(resourcePath), coding));
+                return;
+            }
+        }
+        if (!binary && contentType.toLowerCase().startsWith("image")) {
+            res.setContent(Base64.getMimeEncoder().encode(Files.readAllBytes(resourcePath)));
+            res.setProperty(HTTPMessage.BODY_ENCODING, HTTPMessage.BODY_ENCODING_BASE64);
+        } else if (!inMemory && resourcePath.getFileSystem() == FileSystems.getDefault()) {
+            //文件在默认文件系统上时，报文体由FileChannel.transferTo直接从文件传输到连接
+            FileChannel contentChannel = FileChannel.open(resourcePath, StandardOpenOption.READ);
+            res.setContentChannel(contentChannel, contentChannel.size());
+        } else if (!inMemory) {
+            //jar包中的资源无法零拷贝，作为流式报文体逐段读取写出
+            //zipfs的newByteChannel会把整个条目读入内存，因此用输入流边解压边读取
+            res.setContentSource(ContentSource.of(
+                    Channels.newChannel(Files.newInputStream(resourcePath)),
+                    indexed.size
+            ));
+        } else {
+            res.setContent(Files.readAllBytes(resourcePath));
+        }
+    }
+
+    /**
+     * 在索引中查找资源旁预先压缩好的文件，目前只识别gzip格式的.gz文件
+     * .gz文件比原文件旧时视为已过期，不使用
+     *
+     * @param indexed 资源的索引项
+     * @param coding  压缩编码
+     * @return 预先压缩好的文件的索引项，没有时返回null
+     */
+    private ResourceIndex.Resource precompressed(ResourceIndex.Resource indexed, String coding) {
+        if (!ContentCoding.GZIP.equals(coding)) {
+            return null;
+        }
+        ResourceIndex.Resource gz = resourceIndex.get(indexed.resource + ".gz");
+        if (gz == null || gz.directory || gz.lastModified < indexed.lastModified) {
+            return null;
+        }
+        return gz;
+    }
+
+    /**
+     * 资源是否支持Range请求：只有默认文件系统上、按原始字节发送的文件才能按区间传输
+     *
+     * @param resourcePath 资源路径
+     * @param contentType  资源的mime类型
+     * @param binary       请求方是否能接收原始字节的报文体
+     * @return 是否支持Range请求
+     */
+    private boolean isRangeable(Path resourcePath, String contentType, boolean binary) {
+        if (resourcePath.getFileSystem() != FileSystems.getDefault()) {
+            return false;
+        }
+        return binary || contentType == null || !contentType.toLowerCase().startsWith("image");
+    }
+
+    /**
+     * If-Range条件是否成立，不成立时忽略Range，回应整个资源
+     *
+     * @param ifRange      If-Range请求头的值，没有时为空字符串
+     * @param etag         资源当前的ETag
+     * @param lastModified 资源最后一次修改时间
+     * @return 条件是否成立
+     */
+    private boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange.isEmpty()) {
+            return true;
+        }
+        long date = HTTPDate.parse(ifRange);
+        if (date >= 0) {
+            //HTTP时间只精确到秒
+            return date == lastModified / 1000 * 1000;
+        }
+        //实体标签必须强匹配，弱标签总是不匹配
+        return !ifRange.startsWith("W/") && ifRange.trim().equals(etag);
+    }
+
+    /**
+     * 构建Range请求的响应，区间直接由文件通道传输
+     * 一个区间时回应单个206，多个区间时回应multipart/byteranges，没有可满足的区间时回应416
+     * 区间按打开的文件通道的当前长度解析，而不是索引中的长度：文件变化后索引要等到监视事件到达才更新
+     *
+     * @param indexed 资源的索引项
+     * @param header  Range请求头的值
+     * @return 响应，Range格式错误或区间过多时返回null（应忽略Range，回应整个资源）
+     * @throws IOException 读取资源失败
+     */
+    private ResponseMessage rangeResponse(ResourceIndex.Resource indexed, String header) throws IOException {
+        FileChannel contentChannel = FileChannel.open(indexed.path, StandardOpenOption.READ);
+        boolean transferring = false;
+        try {
+            long length = contentChannel.size();
+            List<long[]> ranges = ByteRanges.parse(header, length);
+            if (ranges == null) {
+                return null;
+            }
+            ResponseMessage res;
+            if (ranges.isEmpty()) {
+                res = new ResponseMessage(416);
+                res.setProperty("Content-Range", "bytes */" + length);
+                return res;
+            }
+            String contentType = indexed.contentType;
+            res = new ResponseMessage(206);
+            transferring = true;
+            if (ranges.size() == 1) {
+                long[] range = ranges.get(0);
+                res.setProperty("Content-Type", contentType);
+                res.setProperty("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+                res.setContentChannel(contentChannel, range[0], range[1] - range[0] + 1);
+                return res;
+            }
+            //multipart/byteranges，每个区间之前是分隔符和该区间的报文头
+            String boundary = Long.toHexString(System.nanoTime()) + Long.toHexString(length);
+            List<ResponseMessage.FileRange> parts = new ArrayList<>(ranges.size());
+            for (long[] range : ranges) {
+                String preamble = HTTPMessage.getCRLF() + "--" + boundary + HTTPMessage.getCRLF()
+                        + (contentType == null ? "" : "Content-Type: " + contentType + HTTPMessage.getCRLF())
+                        + "Content-Range: bytes " + range[0] + "-" + range[1] + "/" + length + HTTPMessage.getCRLF()
+                        + HTTPMessage.getCRLF();
+                parts.add(new ResponseMessage.FileRange(
+                        preamble.getBytes(StandardCharsets.US_ASCII), range[0], range[1] - range[0] + 1
+                ));
+            }
+            byte[] epilogue = (HTTPMessage.getCRLF() + "--" + boundary + "--" + HTTPMessage.getCRLF())
+                    .getBytes(StandardCharsets.US_ASCII);
+            res.setProperty("Content-Type", "multipart/byteranges;boundary=" + boundary);
+            res.setContentRanges(contentChannel, parts, epilogue);
+            return res;
+        } finally {
+            //不传输文件时立即关闭通道，传输时由写出方在发送完毕后关闭
+            if (!transferring) {
+                contentChannel.close();
+            }
+        }
+    }
+
+    /**
+     * 构建资源的缓存项，序列化后超过缓存单项上限时返回null
+     *
+     * @param indexed    资源的索引项
+     * @param binary     请求方是否能接收原始字节的报文体
+     * @param rangeable  资源是否支持Range请求
+     * @param negotiable 响应是否随Accept-Encoding变化
+     * @param coding     压缩编码，不压缩时为null
+     * @param etag       该表示的实体标签
+     * @return 缓存项
+     * @throws IOException 读取资源失败
+     */
+    private ResponseCache.Entry loadCacheEntry(ResourceIndex.Resource indexed, boolean binary, boolean rangeable,
+                                               boolean negotiable, String coding, String etag) throws IOException {
+        long last_modified = indexed.lastModified;
+        ResponseMessage res = new ResponseMessage(200);
+        res.setProperty("Last-Modified", HTTPDate.format(last_modified));
+        res.setProperty("ETag", etag);
+        if (negotiable) {
+            res.setProperty("Vary", "Accept-Encoding");
+        }
+        //压缩只在构建缓存项时进行一次，之后直接发送缓存的压缩结果
+        setContent(res, indexed, binary, coding, true);
+        if (rangeable && coding == null) {
+            res.setProperty("Accept-Ranges", "bytes");
+        }
+        res.setProperty("Server", serverName);
+        if (binary) {
+            res.setProperty(HTTPMessage.BODY_ENCODING, HTTPMessage.BODY_ENCODING_BINARY);
+        }
+        //去掉报文头末尾的CRLF，以便每次响应追加Date
+        byte[] headerBytes = res.getHeaderBytes();
+        byte[] header = Arrays.copyOf(headerBytes, headerBytes.length - HTTPMessage.getCRLF().length());
+        return responseCache.newEntry(header, res.getContent(), indexed);
+    }
+
+    /**
+     * 估计缓存项中报文体的字节数，用于在加载之前排除过大的资源
+     * 图片需要Base64编码时按MIME格式编码后的长度计算，每76个字符加一个CRLF
+     *
+     * @param indexed 资源的索引项
+     * @param binary  请求方是否接收原始字节的报文体
+     * @return 缓存的报文体的字节数，压缩编码的资源按未压缩的大小估计
+     */
+    private static long storedSize(ResourceIndex.Resource indexed, boolean binary) {
+        if (binary || indexed.contentType == null || !indexed.contentType.toLowerCase().startsWith("image")) {
+            return indexed.size;
+        }
+        long encoded = 4 * ((indexed.size + 2) / 3);
+        return encoded == 0 ? 0 : encoded + 2 * ((encoded - 1) / 76);
+    }
+
+    /**
+     * 保存文件，上传的报文体已在接收时写入临时文件，这里只移动到最终位置
+     *
+     * @param content_type content-type
+     * @param upload       上传的报文体，没有报文体时为null
+     * @param subDir       相对于/receive的子路径
+     * @param base64       内容是否为旧格式的Base64编码
+     * @return 保存文件的最终位置
+     * @throws Exception exception
+     */
+    private String putFile(String content_type, UploadFile upload, String subDir, boolean base64) throws Exception {
+        if (subDir.equals("/") || subDir.equals("\\")) {
+            subDir = "";
+        }
+        String filename = System.currentTimeMillis() + "." + MimeType.getPostfix(content_type);
+        Path file = receiveContentDir
+                .resolve(subDir)
+                .resolve(filename);//接收到的资源以接收时的毫秒数命名
+        if (upload == null) {
+            if (!Files.exists(file)) {
+                Files.createFile(file);
+            }
+        } else if (base64 && !content_type.startsWith("text")) {
+            //只有mime类型为text/*的资源不需要Base64编解码，解码时流式读写，不把整个文件读入内存
+            try (InputStream in = Base64.getMimeDecoder().wrap(Files.newInputStream(upload.getPath()))) {
+                Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } else {
+            Files.move(upload.getPath(), file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        log("Generate file at " + file.toString());
+        return filename;
+    }
+}
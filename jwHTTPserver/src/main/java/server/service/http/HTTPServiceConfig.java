@@ -0,0 +1,385 @@
+package server.service.http;
+
+/**
+ * HTTP服务的可配置参数
+ * 默认值可以通过-D系统属性覆盖，例如 -Djwhttp.handlers=8
+ */
+public class HTTPServiceConfig {
+    //Handler（处理可读写连接的反应器）的个数，每个Handler独占一个Selector和一个线程
+    private int handlerCount;
+
+    //处理请求的工作线程数，为0时请求直接在Handler线程中处理
+    private int workerCount;
+
+    //工作线程池等待队列的容量，队列满时新请求被拒绝并回应503
+    private int workerQueueCapacity;
+
+    //长连接允许的最大空闲时间，单位毫秒
+    private long idleTimeout;
+
+    //一个长连接上最多处理的请求数，达到后回应Connection: close并断开
+    private int maxKeepAliveRequests;
+
+    //打开的连接数达到此值时不再保持长连接，并提前断开空闲的长连接
+    private int maxConnections;
+
+    //响应缓存的字节预算，为0时不启用缓存
+    private long cacheCapacity;
+
+    //单个资源进入缓存的最大字节数，更大的资源直接从文件传输
+    private long cacheMaxEntrySize;
+
+    //缓存项是否放在堆外内存中
+    private boolean cacheOffHeap;
+
+    //连接待写出的字节数超过此值时暂停读取该连接的请求，直到积压的响应写出
+    private long writeHighWaterMark;
+
+    //缓冲区池中空闲缓冲区最多保留的字节数
+    private long bufferPoolCapacity;
+
+    //输出运行指标的路径，为空字符串时不提供
+    private String metricsPath;
+
+    //服务日志的级别：error只输出错误，info输出运行状态，debug另外输出每个请求和响应的完整报文
+    private LogLevel logLevel;
+
+    //访问日志文件的路径，为空字符串时不记录访问日志
+    private String accessLogPath;
+
+    //访问日志的格式，common或combined（另含Referer和User-Agent）
+    private String accessLogFormat;
+
+    //访问日志的抽样比例，1为全部记录，5xx的响应总是记录
+    private double accessLogSampleRate;
+
+    //访问日志文件轮转的大小，为0时不轮转
+    private long accessLogMaxSize;
+
+    //轮转时保留的访问日志文件个数（含正在写入的文件）
+    private int accessLogMaxFiles;
+
+    //请求报文体允许的最大字节数，超过时回应413
+    private long maxBodySize;
+
+    //公共资源所在的文件夹，为空字符串时使用classpath中的public文件夹
+    private String resourceDir;
+
+    //保存上传文件的文件夹，相对路径相对于工作目录
+    private String receiveDir;
+
+    //是否按Accept-Encoding压缩文本类型的响应
+    private boolean compression;
+
+    //小于此字节数的资源不压缩
+    private long compressMinSize;
+
+    /**
+     * 按-D系统属性或默认值初始化，系统属性与setter经过同样的检查，取值不合法时抛出IllegalArgumentException
+     */
+    public HTTPServiceConfig() {
+        setHandlerCount(Integer.getInteger("jwhttp.handlers", Runtime.getRuntime().availableProcessors()));
+        setWorkerCount(Integer.getInteger("jwhttp.workers", 0));
+        setWorkerQueueCapacity(Integer.getInteger("jwhttp.workerQueue", 1024));
+        setIdleTimeout(Long.getLong("jwhttp.idleTimeout", 10000L));
+        setMaxKeepAliveRequests(Integer.getInteger("jwhttp.maxKeepAliveRequests", 100));
+        setMaxConnections(Integer.getInteger("jwhttp.maxConnections", 10000));
+        setCacheCapacity(Long.getLong("jwhttp.cacheCapacity", 32L * 1024 * 1024));
+        setCacheMaxEntrySize(Long.getLong("jwhttp.cacheMaxEntrySize", 1024L * 1024));
+        setCacheOffHeap(Boolean.getBoolean("jwhttp.cacheOffHeap"));
+        setWriteHighWaterMark(Long.getLong("jwhttp.writeHighWaterMark", 64L * 1024));
+        setBufferPoolCapacity(Long.getLong("jwhttp.bufferPoolCapacity", 64L * 1024 * 1024));
+        setMetricsPath(System.getProperty("jwhttp.metricsPath", "/metrics"));
+        setLogLevel(parseLogLevel(System.getProperty("jwhttp.logLevel", "info")));
+        setAccessLogPath(System.getProperty("jwhttp.accessLog", "logs/access.log"));
+        setAccessLogFormat(System.getProperty("jwhttp.accessLogFormat", "combined"));
+        setAccessLogSampleRate(parseSampleRate(System.getProperty("jwhttp.accessLogSample", "1")));
+        setAccessLogMaxSize(Long.getLong("jwhttp.accessLogMaxSize", 64L * 1024 * 1024));
+        setAccessLogMaxFiles(Integer.getInteger("jwhttp.accessLogMaxFiles", 5));
+        setMaxBodySize(Long.getLong("jwhttp.maxBodySize", 256L * 1024 * 1024));
+        setResourceDir(System.getProperty("jwhttp.resourceDir", ""));
+        setReceiveDir(System.getProperty("jwhttp.receiveDir", "receive"));
+        setCompression(Boolean.parseBoolean(System.getProperty("jwhttp.compression", "true")));
+        setCompressMinSize(Long.getLong("jwhttp.compressMinSize", 1024L));
+    }
+
+    private static LogLevel parseLogLevel(String value) {
+        try {
+            return LogLevel.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("jwhttp.logLevel must be error, info or debug");
+        }
+    }
+
+    private static double parseSampleRate(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("jwhttp.accessLogSample must be a number");
+        }
+    }
+
+    public int getHandlerCount() {
+        return handlerCount;
+    }
+
+    public void setHandlerCount(int handlerCount) {
+        if (handlerCount < 1) {
+            throw new IllegalArgumentException("handlerCount must be positive");
+        }
+        this.handlerCount = handlerCount;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public void setWorkerCount(int workerCount) {
+        if (workerCount < 0) {
+            throw new IllegalArgumentException("workerCount must not be negative");
+        }
+        this.workerCount = workerCount;
+    }
+
+    public int getWorkerQueueCapacity() {
+        return workerQueueCapacity;
+    }
+
+    public void setWorkerQueueCapacity(int workerQueueCapacity) {
+        if (workerQueueCapacity < 1) {
+            throw new IllegalArgumentException("workerQueueCapacity must be positive");
+        }
+        this.workerQueueCapacity = workerQueueCapacity;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        if (idleTimeout < 1) {
+            throw new IllegalArgumentException("idleTimeout must be positive");
+        }
+        this.idleTimeout = idleTimeout;
+    }
+
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+
+    public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+        if (maxKeepAliveRequests < 1) {
+            throw new IllegalArgumentException("maxKeepAliveRequests must be positive");
+        }
+        this.maxKeepAliveRequests = maxKeepAliveRequests;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be positive");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    public long getCacheCapacity() {
+        return cacheCapacity;
+    }
+
+    public void setCacheCapacity(long cacheCapacity) {
+        if (cacheCapacity < 0) {
+            throw new IllegalArgumentException("cacheCapacity must not be negative");
+        }
+        this.cacheCapacity = cacheCapacity;
+    }
+
+    public long getCacheMaxEntrySize() {
+        return cacheMaxEntrySize;
+    }
+
+    public void setCacheMaxEntrySize(long cacheMaxEntrySize) {
+        if (cacheMaxEntrySize < 0) {
+            throw new IllegalArgumentException("cacheMaxEntrySize must not be negative");
+        }
+        this.cacheMaxEntrySize = cacheMaxEntrySize;
+    }
+
+    public boolean isCacheOffHeap() {
+        return cacheOffHeap;
+    }
+
+    public void setCacheOffHeap(boolean cacheOffHeap) {
+        this.cacheOffHeap = cacheOffHeap;
+    }
+
+    public long getWriteHighWaterMark() {
+        return writeHighWaterMark;
+    }
+
+    public void setWriteHighWaterMark(long writeHighWaterMark) {
+        if (writeHighWaterMark < 0) {
+            throw new IllegalArgumentException("writeHighWaterMark must not be negative");
+        }
+        this.writeHighWaterMark = writeHighWaterMark;
+    }
+
+    public long getBufferPoolCapacity() {
+        return bufferPoolCapacity;
+    }
+
+    public void setBufferPoolCapacity(long bufferPoolCapacity) {
+        if (bufferPoolCapacity < 0) {
+            throw new IllegalArgumentException("bufferPoolCapacity must not be negative");
+        }
+        this.bufferPoolCapacity = bufferPoolCapacity;
+    }
+
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    public void setMetricsPath(String metricsPath) {
+        if (metricsPath == null || (!metricsPath.isEmpty() && !metricsPath.startsWith("/"))) {
+            throw new IllegalArgumentException("metricsPath must be empty or start with '/'");
+        }
+        this.metricsPath = metricsPath;
+    }
+
+    public LogLevel getLogLevel() {
+        return logLevel;
+    }
+
+    public void setLogLevel(LogLevel logLevel) {
+        if (logLevel == null) {
+            throw new IllegalArgumentException("logLevel must not be null");
+        }
+        this.logLevel = logLevel;
+    }
+
+    /**
+     * @param level 日志级别
+     * @return 该级别的日志是否输出
+     */
+    public boolean isLogEnabled(LogLevel level) {
+        return logLevel.ordinal() >= level.ordinal();
+    }
+
+    public String getAccessLogPath() {
+        return accessLogPath;
+    }
+
+    public void setAccessLogPath(String accessLogPath) {
+        if (accessLogPath == null) {
+            throw new IllegalArgumentException("accessLogPath must not be null");
+        }
+        this.accessLogPath = accessLogPath;
+    }
+
+    public String getAccessLogFormat() {
+        return accessLogFormat;
+    }
+
+    public void setAccessLogFormat(String accessLogFormat) {
+        if (!"common".equals(accessLogFormat) && !"combined".equals(accessLogFormat)) {
+            throw new IllegalArgumentException("accessLogFormat must be common or combined");
+        }
+        this.accessLogFormat = accessLogFormat;
+    }
+
+    public double getAccessLogSampleRate() {
+        return accessLogSampleRate;
+    }
+
+    public void setAccessLogSampleRate(double accessLogSampleRate) {
+        if (!(accessLogSampleRate > 0 && accessLogSampleRate <= 1)) {
+            throw new IllegalArgumentException("accessLogSampleRate must be in (0, 1]");
+        }
+        this.accessLogSampleRate = accessLogSampleRate;
+    }
+
+    public long getAccessLogMaxSize() {
+        return accessLogMaxSize;
+    }
+
+    public void setAccessLogMaxSize(long accessLogMaxSize) {
+        if (accessLogMaxSize < 0) {
+            throw new IllegalArgumentException("accessLogMaxSize must not be negative");
+        }
+        this.accessLogMaxSize = accessLogMaxSize;
+    }
+
+    public int getAccessLogMaxFiles() {
+        return accessLogMaxFiles;
+    }
+
+    public void setAccessLogMaxFiles(int accessLogMaxFiles) {
+        if (accessLogMaxFiles < 1) {
+            throw new IllegalArgumentException("accessLogMaxFiles must be positive");
+        }
+        this.accessLogMaxFiles = accessLogMaxFiles;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    public void setMaxBodySize(long maxBodySize) {
+        if (maxBodySize < 0) {
+            throw new IllegalArgumentException("maxBodySize must not be negative");
+        }
+        this.maxBodySize = maxBodySize;
+    }
+
+    public String getResourceDir() {
+        return resourceDir;
+    }
+
+    public void setResourceDir(String resourceDir) {
+        if (resourceDir == null) {
+            throw new IllegalArgumentException("resourceDir must not be null");
+        }
+        this.resourceDir = resourceDir;
+    }
+
+    public String getReceiveDir() {
+        return receiveDir;
+    }
+
+    public void setReceiveDir(String receiveDir) {
+        if (receiveDir == null || receiveDir.isEmpty()) {
+            throw new IllegalArgumentException("receiveDir must not be empty");
+        }
+        this.receiveDir = receiveDir;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public long getCompressMinSize() {
+        return compressMinSize;
+    }
+
+    public void setCompressMinSize(long compressMinSize) {
+        if (compressMinSize < 0) {
+            throw new IllegalArgumentException("compressMinSize must not be negative");
+        }
+        this.compressMinSize = compressMinSize;
+    }
+
+    /**
+     * 服务日志的级别，按输出的详细程度从低到高排列
+     */
+    public enum LogLevel {
+        ERROR,
+        INFO,
+        DEBUG
+    }
+}
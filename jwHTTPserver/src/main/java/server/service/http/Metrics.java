@@ -0,0 +1,231 @@
+package server.service.http;
+
+import http.buffer.BufferPool;
+import http.metrics.LatencyHistogram;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * 服务的运行指标，以Prometheus文本格式输出
+ * 计数器使用分段的LongAdder，延迟使用无锁的LatencyHistogram，I/O线程记录时不加锁也不分配对象
+ * 连接数、缓存、缓冲区池等已有统计的组件以gauge的方式登记，输出时才读取
+ */
+class Metrics {
+    /**
+     * 请求经过的各个阶段
+     */
+    enum Phase {
+        //从接受连接到开始处理该连接
+        ACCEPT("accept"),
+        //从收到请求的第一个字节到请求（含报文体）解析完整
+        PARSE("parse"),
+        //业务方法生成响应
+        HANDLE("handle"),
+        //从响应加入待写出队列到全部写出
+        WRITE("write");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    //Prometheus直方图各桶的上界，单位秒
+    private static final double[] BUCKET_BOUNDS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    //LatencyHistogram的每个细分桶归入的Prometheus桶序号，超过最大上界的归入+Inf（序号为BUCKET_BOUNDS.length）
+    private static final int[] BUCKET_OF = new int[LatencyHistogram.bucketCount()];
+
+    static {
+        for (int i = 0; i < BUCKET_OF.length; i++) {
+            long upperMicros = LatencyHistogram.bucketUpperBound(i);
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && upperMicros > BUCKET_BOUNDS[bucket] * 1_000_000) {
+                bucket++;
+            }
+            BUCKET_OF[i] = bucket;
+        }
+    }
+
+    private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+    private final LongAdder[] responses = new LongAdder[ResponseMessage.ResponseStatus.values().length];
+
+    final LongAdder acceptedConnections = new LongAdder();
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+
+    //登记的gauge，只在服务初始化时登记
+    private final List<Gauge> gauges = new ArrayList<>();
+
+    Metrics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一个阶段的耗时
+     *
+     * @param phase 阶段
+     * @param nanos 耗时，单位纳秒
+     */
+    void record(Phase phase, long nanos) {
+        phases[phase.ordinal()].recordNanos(nanos);
+    }
+
+    /**
+     * 按状态码统计响应
+     *
+     * @param res 响应
+     */
+    void countResponse(ResponseMessage res) {
+        responses[res.getStatus().ordinal()].increment();
+    }
+
+    /**
+     * 登记一个输出时才读取的指标
+     *
+     * @param name  指标名
+     * @param type  gauge或counter
+     * @param help  说明
+     * @param value 读取指标值的方法
+     */
+    void gauge(String name, String type, String help, DoubleSupplier value) {
+        gauges.add(new Gauge(name, type, help, value));
+    }
+
+    /**
+     * 登记服务各组件已有的统计
+     *
+     * @param pressure   连接压力，提供打开的连接数
+     * @param bufferPool 缓冲区池
+     * @param cache      响应缓存，未启用时为null
+     * @param workerPool 工作线程池，未启用时为null
+     * @param accessLog  访问日志
+     */
+    void registerComponents(ConnectionPressure pressure, BufferPool bufferPool, ResponseCache cache,
+                            WorkerPool workerPool, AccessLog accessLog) {
+        gauge("jwhttp_open_connections", "gauge", "Currently open connections.", pressure::getOpenConnections);
+        gauge("jwhttp_access_log_dropped_total", "counter", "Access log records dropped because the ring was full.",
+                accessLog::getDroppedCount);
+        gauge("jwhttp_buffer_pool_allocated_bytes", "gauge", "Direct memory allocated by the buffer pool.",
+                bufferPool::getAllocatedBytes);
+        gauge("jwhttp_buffer_pool_leased_bytes", "gauge", "Pooled buffers currently leased.",
+                bufferPool::getLeasedBytes);
+        gauge("jwhttp_buffer_pool_retained_bytes", "gauge", "Idle buffers kept by the pool.",
+                bufferPool::getRetainedBytes);
+        gauge("jwhttp_buffer_pool_unpooled_total", "counter", "Buffer requests larger than the largest size class.",
+                bufferPool::getUnpooledCount);
+        if (cache != null) {
+            gauge("jwhttp_cache_hits_total", "counter", "Response cache hits.", cache::getHitCount);
+            gauge("jwhttp_cache_misses_total", "counter", "Response cache misses.", cache::getMissCount);
+            gauge("jwhttp_cache_evictions_total", "counter", "Response cache evictions.", cache::getEvictionCount);
+            gauge("jwhttp_cache_hit_ratio", "gauge", "Response cache hits over lookups.", () -> {
+                long hits = cache.getHitCount();
+                long lookups = hits + cache.getMissCount();
+                return lookups == 0 ? 0 : (double) hits / lookups;
+            });
+            gauge("jwhttp_cache_bytes", "gauge", "Bytes held by the response cache.", cache::getUsedBytes);
+            gauge("jwhttp_cache_entries", "gauge", "Entries in the response cache.", cache::getEntryCount);
+        }
+        if (workerPool != null) {
+            gauge("jwhttp_worker_queue_depth", "gauge", "Requests waiting for a worker.", workerPool::getQueueDepth);
+            gauge("jwhttp_worker_active", "gauge", "Workers handling a request.", workerPool::getActiveCount);
+            gauge("jwhttp_worker_rejected_total", "counter", "Requests rejected because the worker queue was full.",
+                    workerPool::getRejectedCount);
+        }
+    }
+
+    /**
+     * @return 以Prometheus文本格式输出全部指标的响应
+     */
+    ResponseMessage toResponse() {
+        ResponseMessage res = new ResponseMessage(200);
+        res.setProperty("Content-Type", "text/plain;version=0.0.4");
+        res.setContent(render().getBytes(StandardCharsets.UTF_8));
+        return res;
+    }
+
+    /**
+     * @return Prometheus文本格式的全部指标
+     */
+    String render() {
+        StringBuilder sb = new StringBuilder(4096);
+        header(sb, "jwhttp_phase_seconds", "histogram", "Latency of each request phase.");
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = phases[phase.ordinal()];
+            long[] snapshot = histogram.snapshot();
+            long[] buckets = new long[BUCKET_BOUNDS.length + 1];
+            for (int i = 0; i < snapshot.length; i++) {
+                buckets[BUCKET_OF[i]] += snapshot[i];
+            }
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i];
+                sb.append("jwhttp_phase_seconds_bucket{phase=\"").append(phase.label).append("\",le=\"")
+                        .append(i < BUCKET_BOUNDS.length ? format(BUCKET_BOUNDS[i]) : "+Inf")
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            sb.append("jwhttp_phase_seconds_sum{phase=\"").append(phase.label).append("\"} ")
+                    .append(format(histogram.getSumNanos() / 1e9)).append('\n');
+            sb.append("jwhttp_phase_seconds_count{phase=\"").append(phase.label).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+
+        header(sb, "jwhttp_responses_total", "counter", "Responses by status code.");
+        for (ResponseMessage.ResponseStatus status : ResponseMessage.ResponseStatus.values()) {
+            sb.append("jwhttp_responses_total{code=\"").append(status.getStatus_code()).append("\"} ")
+                    .append(responses[status.ordinal()].sum()).append('\n');
+        }
+
+        sample(sb, "jwhttp_connections_accepted_total", "counter", "Accepted connections.", acceptedConnections.sum());
+        sample(sb, "jwhttp_received_bytes_total", "counter", "Bytes read from clients.", bytesIn.sum());
+        sample(sb, "jwhttp_sent_bytes_total", "counter", "Bytes written to clients.", bytesOut.sum());
+        for (Gauge gauge : gauges) {
+            sample(sb, gauge.name, gauge.type, gauge.help, gauge.value.getAsDouble());
+        }
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String type, String help, double value) {
+        header(sb, name, type, help);
+        sb.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+
+    private static class Gauge {
+        final String name;
+        final String type;
+        final String help;
+        final DoubleSupplier value;
+
+        Gauge(String name, String type, String help, DoubleSupplier value) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
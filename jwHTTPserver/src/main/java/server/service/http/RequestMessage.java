@@ -0,0 +1,132 @@
+package server.service.http;
+
+import http.message.HTTPMessage;
+import http.message.HeaderName;
+import http.message.HeaderTable;
+import http.method.HTTPMethod;
+
+/**
+ * 服务端解析得到的HTTP请求
+ * 报文头参数只记录在请求报文头字节中的区间，业务方法读取时才解码成字符串
+ */
+class RequestMessage extends HTTPMessage {
+    private HTTPMethod method;
+    private String resource;
+
+    //接收到的上传报文体，没有报文体或报文体被丢弃时为null
+    private UploadFile upload;
+
+    //请求行中的版本是否为HTTP/1.0，HTTP/1.0默认不保持长连接
+    private boolean http10;
+
+    RequestMessage(HTTPMethod method, String resource) {
+        super();
+        this.method = method;
+        this.resource = resource;
+    }
+
+    HTTPMethod getMethod() {
+        return method;
+    }
+
+    String getResource() {
+        return resource;
+    }
+
+    /**
+     * 获取报文头参数值
+     *
+     * @param key 参数名，大小写无关
+     * @return 参数值，不存在时返回空字符串
+     */
+    String getField(String key) {
+        String value = getProperty(key);
+        return value == null ? "" : value;
+    }
+
+    /**
+     * 获取常用的报文头参数值，按序号直接定位
+     *
+     * @param key 参数名
+     * @return 参数值，不存在时返回空字符串
+     */
+    String getField(HeaderName key) {
+        String value = getProperty(key);
+        return value == null ? "" : value;
+    }
+
+    void putField(String key, String value) {
+        setProperty(key, value);
+    }
+
+    /**
+     * @return 报文头参数表，由RequestParser填入参数的区间
+     */
+    HeaderTable getFields() {
+        return getHeaders();
+    }
+
+    boolean isHTTP10() {
+        return http10;
+    }
+
+    void setHTTP10(boolean http10) {
+        this.http10 = http10;
+    }
+
+    /**
+     * 请求方是否希望保持长连接
+     * HTTP/1.1默认保持，除非Connection中有close；HTTP/1.0只有Connection中有keep-alive时才保持
+     */
+    boolean wantsKeepAlive() {
+        String connection = getField(HeaderName.CONNECTION);
+        for (String option : connection.split(",")) {
+            option = option.trim();
+            if (option.equalsIgnoreCase("close")) {
+                return false;
+            }
+            if (option.equalsIgnoreCase("keep-alive")) {
+                return true;
+            }
+        }
+        return !http10;
+    }
+
+    UploadFile getUpload() {
+        return upload;
+    }
+
+    void setUpload(UploadFile upload) {
+        this.upload = upload;
+    }
+
+    /**
+     * 请求未交给业务方法处理时，删除已接收的上传报文体
+     */
+    void discardUpload() {
+        if (upload != null) {
+            upload.abort();
+            upload = null;
+        }
+    }
+
+    /**
+     * 请求方是否能接收原始字节的报文体，否则按旧格式对非text类型的报文体进行Base64编解码
+     */
+    boolean acceptsBinaryBody() {
+        return BODY_ENCODING_BINARY.equalsIgnoreCase(getField(HeaderName.X_BODY_ENCODING));
+    }
+
+    @Override
+    protected String getStartLine() {
+        return method.getMethodName() + " " + resource + " " + HTTP_VERSION + CRLF;
+    }
+
+    /**
+     * 仅用于调试输出
+     */
+    @Override
+    public String toString() {
+        return buildContent(buildHeader(new StringBuilder(getStartLine()))).toString();
+    }
+}
@@ -0,0 +1,365 @@
+package server.service.http;
+
+import http.message.HeaderName;
+import http.method.HTTPMethod;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 增量式的HTTP请求解析器，以字节为单位的状态机
+ * 每个连接持有一个解析器，请求分多次到达时解析状态保存在解析器中，请求完整后才交给业务方法处理
+ * 状态转移：REQUEST_LINE -> HEADERS -> BODY -> DONE
+ * 请求行和报文头依次追加到同一个字节数组中，报文头参数只记录区间，报文头结束时整块复制一次交给请求
+ * 报文体不在内存中累积，报文头结束时由BodySinkFactory决定报文体的去向，到达的字节直接交给BodySink
+ */
+class RequestParser {
+    //单行（请求行或报文头参数行）允许的最大长度
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    //允许的最多报文头参数行数
+    private static final int MAX_FIELD_COUNT = 100;
+
+    //请求行和报文头合计允许的最大长度
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte SP = ' ';
+    private static final byte COLON = ':';
+
+    private static final byte[] HTTP_10 = "HTTP/1.0".getBytes(StandardCharsets.US_ASCII);
+
+    private enum State {
+        REQUEST_LINE,
+        HEADERS,
+        BODY,
+        DONE
+    }
+
+    private State state = State.REQUEST_LINE;
+
+    //请求行和报文头的缓冲，行可能跨越多次读取
+    private byte[] head = new byte[512];
+    private int headLength;
+
+    //当前行在head中的区间，lineEnd不含行尾的CRLF
+    private int lineStart;
+    private int lineEnd;
+    private int fieldCount;
+
+    //Content-Length出现的次数，报文头参数表查找只得到最后一个，重复时无法确定报文体的长度
+    private int contentLengthCount;
+
+    //允许的最大报文体长度
+    private final long maxBodySize;
+    private final BodySinkFactory bodySinkFactory;
+
+    private RequestMessage request;
+    private BodySink body;
+    private long bodyLength;
+    private long bodyRead;
+
+    /**
+     * @param maxBodySize     允许的最大报文体长度，超过时回应413
+     * @param bodySinkFactory 决定报文体去向的方法
+     */
+    RequestParser(long maxBodySize, BodySinkFactory bodySinkFactory) {
+        this.maxBodySize = maxBodySize;
+        this.bodySinkFactory = bodySinkFactory;
+    }
+
+    /**
+     * 从缓冲区中消费字节，直到请求解析完整或缓冲区耗尽
+     * 一个请求结束之后的字节不会被消费，留在缓冲区中
+     *
+     * @param buffer 处于读模式的缓冲区
+     * @return 请求是否已经完整
+     * @throws MalformedRequestException 请求格式错误
+     * @throws IOException               写入报文体失败
+     */
+    boolean parse(ByteBuffer buffer) throws MalformedRequestException, IOException {
+        while (state != State.DONE && buffer.hasRemaining()) {
+            if (state == State.BODY) {
+                int n = (int) Math.min(buffer.remaining(), bodyLength - bodyRead);
+                int limit = buffer.limit();
+                buffer.limit(buffer.position() + n);
+                try {
+                    body.write(buffer);
+                } finally {
+                    buffer.limit(limit);
+                }
+                bodyRead += n;
+                if (bodyRead == bodyLength) {
+                    body.finish();
+                    body = null;
+                    state = State.DONE;
+                }
+            } else if (readLine(buffer)) {
+                if (state == State.REQUEST_LINE) {
+                    parseRequestLine();
+                } else {
+                    parseFieldLine();
+                }
+                lineStart = headLength;
+            }
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * @return 解析完成的请求
+     */
+    RequestMessage getRequest() {
+        return request;
+    }
+
+    /**
+     * 重置解析器以解析同一连接上的下一个请求
+     * 连接关闭时也会调用，此时尚未接收完整的报文体被丢弃
+     */
+    void reset() {
+        if (body != null) {
+            body.abort();
+        }
+        state = State.REQUEST_LINE;
+        headLength = 0;
+        lineStart = 0;
+        fieldCount = 0;
+        contentLengthCount = 0;
+        request = null;
+        body = null;
+        bodyLength = 0;
+        bodyRead = 0;
+    }
+
+    /**
+     * @return 解析器是否处于两个请求之间，没有解析到一半的请求
+     */
+    boolean isIdle() {
+        return state == State.REQUEST_LINE && headLength == 0;
+    }
+
+    /**
+     * 把字节追加到当前行，遇到LF时返回true，当前行为[lineStart, lineEnd)，不含CRLF
+     */
+    private boolean readLine(ByteBuffer buffer) throws MalformedRequestException {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (headLength == head.length) {
+                if (headLength >= MAX_HEADER_SIZE) {
+                    throw new MalformedRequestException(400, "Header too large");
+                }
+                head = Arrays.copyOf(head, Math.min(head.length * 2, MAX_HEADER_SIZE));
+            }
+            head[headLength++] = b;
+            if (b == LF) {
+                lineEnd = headLength - 1;
+                if (lineEnd > lineStart && head[lineEnd - 1] == CR) {
+                    lineEnd--;
+                }
+                return true;
+            }
+            if (headLength - lineStart > MAX_LINE_LENGTH) {
+                throw new MalformedRequestException(400, "Line too long");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析请求行
+     * Format = Method SP Request-URI SP HTTP-Version
+     */
+    private void parseRequestLine() throws MalformedRequestException {
+        if (lineEnd == lineStart) {
+            //忽略请求行之前的空行，请求行总是从head的开头开始
+            headLength = 0;
+            return;
+        }
+        int firstSpace = indexOf(SP, 0);
+        int secondSpace = firstSpace < 0 ? -1 : indexOf(SP, firstSpace + 1);
+        if (firstSpace <= 0 || secondSpace <= firstSpace + 1) {
+            throw new MalformedRequestException(400, "Malformed request line");
+        }
+        HTTPMethod method;
+        try {
+            method = HTTPMethod.valueOf(new String(head, 0, firstSpace, StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException iae) {
+            throw new MalformedRequestException(405, "Method not supported");
+        }
+        String resource = new String(head, firstSpace + 1, secondSpace - firstSpace - 1, StandardCharsets.UTF_8);
+        request = new RequestMessage(method, resource);
+        request.setHTTP10(versionEquals(HTTP_10, secondSpace + 1));
+        state = State.HEADERS;
+    }
+
+    /**
+     * 解析报文头参数行，只记录参数名和参数值在head中的区间，不生成字符串
+     * 空行表示报文头结束
+     */
+    private void parseFieldLine() throws MalformedRequestException, IOException {
+        if (lineEnd == lineStart) {
+            endOfHeader();
+            return;
+        }
+        if (++fieldCount > MAX_FIELD_COUNT) {
+            throw new MalformedRequestException(400, "Too many header fields");
+        }
+        int colon = indexOf(COLON, lineStart);
+        if (colon <= lineStart) {
+            throw new MalformedRequestException(400, "Malformed header field");
+        }
+        int start = colon + 1;
+        int end = lineEnd;
+        while (start < end && (head[start] == SP || head[start] == '\t')) {
+            start++;
+        }
+        while (end > start && (head[end - 1] == SP || head[end - 1] == '\t')) {
+            end--;
+        }
+        HeaderName name = HeaderName.of(head, lineStart, colon);
+        if (name == HeaderName.CONTENT_LENGTH && ++contentLengthCount > 1) {
+            throw new MalformedRequestException(400, "Duplicate Content-Length");
+        }
+        request.getFields().addRange(lineStart, colon, start, end, name);
+    }
+
+    /**
+     * 报文头结束，把报文头交给请求，再根据Content-Length决定是否需要继续读取报文体
+     * 不支持分块传输的请求报文体，带Transfer-Encoding的请求一律拒绝，否则其报文体会被当作下一个请求解析
+     */
+    private void endOfHeader() throws MalformedRequestException, IOException {
+        //head在下一个请求中会被覆盖，请求持有报文头的一份副本
+        request.getFields().setSource(Arrays.copyOf(head, headLength));
+        String contentLength = request.getField(HeaderName.CONTENT_LENGTH);
+        if (!request.getField(HeaderName.TRANSFER_ENCODING).isEmpty()) {
+            //同时带Content-Length时两者的报文体边界可能不一致，是请求走私的常见手法
+            if (!contentLength.isEmpty()) {
+                throw new MalformedRequestException(400, "Both Transfer-Encoding and Content-Length");
+            }
+            throw new MalformedRequestException(411, "Transfer-Encoding is not supported in requests");
+        }
+        long length = 0;
+        if (!contentLength.isEmpty()) {
+            try {
+                length = Long.parseLong(contentLength);
+            } catch (NumberFormatException nfe) {
+                throw new MalformedRequestException(400, "Invalid Content-Length");
+            }
+            if (length < 0) {
+                throw new MalformedRequestException(400, "Invalid Content-Length");
+            }
+            if (length > maxBodySize) {
+                throw new MalformedRequestException(413, "Request body too large");
+            }
+        }
+        if (length == 0) {
+            state = State.DONE;
+        } else {
+            body = bodySinkFactory.open(request, length);
+            bodyLength = length;
+            state = State.BODY;
+        }
+    }
+
+    /**
+     * 当前行从from开始到行尾的内容是否为指定的HTTP版本
+     */
+    private boolean versionEquals(byte[] version, int from) {
+        if (lineEnd - from != version.length) {
+            return false;
+        }
+        for (int i = 0; i < version.length; i++) {
+            if (head[from + i] != version[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(byte target, int from) {
+        for (int i = from; i < lineEnd; i++) {
+            if (head[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 报文体的去向
+     */
+    interface BodySink {
+        /**
+         * 丢弃所有到达的字节
+         */
+        BodySink DISCARD = new BodySink() {
+            @Override
+            public void write(ByteBuffer buffer) {
+                buffer.position(buffer.limit());
+            }
+
+            @Override
+            public void finish() {
+            }
+
+            @Override
+            public void abort() {
+            }
+        };
+
+        /**
+         * 消费缓冲区中剩余的全部字节
+         *
+         * @param buffer 处于读模式的缓冲区
+         * @throws IOException 写入失败
+         */
+        void write(ByteBuffer buffer) throws IOException;
+
+        /**
+         * 报文体已接收完整
+         *
+         * @throws IOException 写入失败
+         */
+        void finish() throws IOException;
+
+        /**
+         * 报文体未接收完整而连接中断，丢弃已接收的部分
+         */
+        void abort();
+    }
+
+    /**
+     * 报文头解析完成时决定报文体去向的方法
+     */
+    interface BodySinkFactory {
+        /**
+         * @param request 已解析完报文头的请求
+         * @param length  报文体长度
+         * @return 报文体的去向
+         * @throws IOException 创建失败
+         */
+        BodySink open(RequestMessage request, long length) throws IOException;
+    }
+
+    /**
+     * 请求格式错误，携带应当回应的状态码
+     */
+    static class MalformedRequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        MalformedRequestException(int statusCode, String message) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
+    }
+}
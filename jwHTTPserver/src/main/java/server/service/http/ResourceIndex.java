@@ -0,0 +1,325 @@
+package server.service.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 公共资源的索引，启动时遍历public文件夹建立，请求的资源路径经一次散列查找即可得到文件的元数据
+ * 索引包含public下全部的文件和文件夹，查不到的资源路径就是不存在的资源，不必再访问文件系统
+ * 资源在默认文件系统上（未打包的classes文件夹）时，由WatchService监视各级文件夹，文件增删改后更新对应的索引项
+ * 文件的实体标签在建立索引项时计算，即在启动时或监视线程中读取文件，处理请求的线程不会为计算摘要而读取整个文件
+ * jar包中的资源不会改变，不需要监视
+ */
+class ResourceIndex implements Runnable {
+    //资源路径到索引项，文件夹同时以带和不带末尾'/'的路径登记
+    private final ConcurrentHashMap<String, Resource> resources = new ConcurrentHashMap<>();
+
+    //public文件夹
+    private final Path root;
+
+    //监视文件夹的WatchService，资源在jar包中或无法监视时为null
+    private WatchService watchService;
+
+    //监视的文件夹，WatchKey不能直接得到完整路径
+    private final ConcurrentHashMap<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+
+    private ResourceIndex(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * 建立classpath中public文件夹的索引，资源在默认文件系统上时启动监视线程
+     *
+     * @param publicUrl public文件夹的URL
+     * @return 索引
+     * @throws IOException 遍历文件夹失败
+     */
+    static ResourceIndex build(URL publicUrl) throws IOException {
+        if (publicUrl == null) {
+            //没有public文件夹，所有资源都不存在
+            return new ResourceIndex(null);
+        }
+        Path root;
+        try {
+            root = getPath(publicUrl.toURI());
+        } catch (URISyntaxException use) {
+            throw new IOException(use);
+        }
+        ResourceIndex index = new ResourceIndex(root);
+        if (root.getFileSystem() == FileSystems.getDefault()) {
+            try {
+                index.watchService = root.getFileSystem().newWatchService();
+            } catch (IOException | UnsupportedOperationException e) {
+                //无法监视时索引保持启动时的状态
+                index.watchService = null;
+            }
+        }
+        index.scan(root);
+        if (index.watchService != null) {
+            Thread watcher = new Thread(index, "jwhttp-resource-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+        return index;
+    }
+
+    /**
+     * @param resource 请求的资源路径，如/index.html
+     * @return 索引项，资源不存在时返回null
+     */
+    Resource get(String resource) {
+        return resources.get(resource);
+    }
+
+    /**
+     * @return 索引项的个数
+     */
+    int size() {
+        return resources.size();
+    }
+
+    /**
+     * @return public文件夹本身的索引项，没有public文件夹时返回null
+     */
+    Resource getRoot() {
+        return resources.get("/");
+    }
+
+    /**
+     * @return 资源是否会随文件修改而更新
+     */
+    boolean isWatching() {
+        return watchService != null;
+    }
+
+    /**
+     * 监视线程，处理文件夹中的变化，直到WatchService被关闭
+     */
+    @Override
+    public void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = watchedDirs.get(key);
+            if (dir != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    try {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            //事件丢失时无法知道哪些文件变了，重新建立整个索引
+                            rescan();
+                        } else {
+                            refresh(dir.resolve((Path) event.context()));
+                        }
+                    } catch (IOException e) {
+                        System.err.println("ResourceIndex : failed to refresh " + dir + " : " + e);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                //文件夹已被删除
+                watchedDirs.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 遍历文件夹，登记其中所有的文件和文件夹，需要时监视其中的每个文件夹
+     */
+    private void scan(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                if (watchService != null) {
+                    watchedDirs.put(d.register(
+                            watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE,
+                            StandardWatchEventKinds.ENTRY_MODIFY
+                    ), d);
+                }
+                put(d, attrs, true);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                put(file, attrs, true);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                //遍历期间被删除的文件直接跳过
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void rescan() throws IOException {
+        for (WatchKey key : watchedDirs.keySet()) {
+            key.cancel();
+        }
+        watchedDirs.clear();
+        //先建立新的索引项再删除旧的，期间的请求不会看到空的索引
+        HashMap<String, Resource> old = new HashMap<>(resources);
+        scan(root);
+        for (String resource : old.keySet()) {
+            Resource current = resources.get(resource);
+            if (current != null && current == old.get(resource)) {
+                resources.remove(resource, current);
+            }
+        }
+    }
+
+    /**
+     * 文件或文件夹发生变化后重新读取其属性，已删除的从索引中移除，新建的文件夹连同其内容一起登记
+     */
+    private void refresh(Path path) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            remove(path);
+            return;
+        }
+        if (attrs.isDirectory()) {
+            scan(path);
+        } else {
+            //文件内容已经变化，即使大小和修改时间相同也重新计算摘要
+            put(path, attrs, false);
+        }
+    }
+
+    /**
+     * 登记文件或文件夹，文件的实体标签在此计算
+     *
+     * @param reuseDigest 遍历时大小和修改时间都没有变化的文件是否沿用原有的实体标签
+     */
+    private void put(Path path, BasicFileAttributes attrs, boolean reuseDigest) throws IOException {
+        String resource = resourceOf(path);
+        if (attrs.isDirectory()) {
+            Resource dir = new Resource(resource, path, true, 0, attrs.lastModifiedTime().toMillis(), null, null);
+            resources.put(resource, dir);
+            resources.put(resource.endsWith("/") ? resource : resource + "/", dir);
+        } else {
+            long size = attrs.size();
+            long lastModified = attrs.lastModifiedTime().toMillis();
+            //重新遍历时大小和修改时间都没有变化的文件沿用原有的实体标签，不再重新计算摘要
+            Resource previous = reuseDigest ? resources.get(resource) : null;
+            String etag;
+            if (previous != null && !previous.directory && previous.path.equals(path)
+                    && previous.size == size && previous.lastModified == lastModified) {
+                etag = previous.etag;
+            } else {
+                try {
+                    etag = EntityTags.digest(path);
+                } catch (IOException e) {
+                    //文件已被删除或无法读取，不能提供的资源不登记
+                    remove(path);
+                    if (!(e instanceof NoSuchFileException)) {
+                        System.err.println("ResourceIndex : failed to read " + path + " : " + e);
+                    }
+                    return;
+                }
+            }
+            resources.put(resource, new Resource(
+                    resource,
+                    path,
+                    false,
+                    size,
+                    lastModified,
+                    Files.probeContentType(path),
+                    etag
+            ));
+        }
+    }
+
+    /**
+     * 移除资源，资源为文件夹时一并移除其中的全部资源
+     */
+    private void remove(Path path) {
+        String resource = resourceOf(path);
+        String prefix = resource + "/";
+        resources.keySet().removeIf(key -> key.equals(resource) || key.startsWith(prefix));
+    }
+
+    /**
+     * @return 文件相对于public文件夹的资源路径，以'/'开头，public文件夹本身为"/"
+     */
+    private String resourceOf(Path path) {
+        StringBuilder sb = new StringBuilder();
+        for (Path name : root.relativize(path)) {
+            if (!name.toString().isEmpty()) {
+                sb.append('/').append(name.toString());
+            }
+        }
+        return sb.length() == 0 ? "/" : sb.toString();
+    }
+
+    private static Path getPath(URI uri) throws IOException {
+        if (uri.getScheme().equals("jar")) {
+            final String[] array = uri.toString().split("[!]");
+            FileSystem fs;
+            try {
+                fs = FileSystems.newFileSystem(URI.create(array[0]), new HashMap<String, String>());
+            } catch (FileSystemAlreadyExistsException e) {
+                fs = FileSystems.getFileSystem(URI.create(array[0]));
+            }
+            return fs.getPath(array[1]);
+        } else {
+            return Paths.get(uri);
+        }
+    }
+
+    /**
+     * 一个资源在某一版本的元数据，文件修改后由新的索引项替换
+     */
+    static final class Resource {
+        //资源路径，文件夹不带末尾的'/'
+        final String resource;
+        final Path path;
+        final boolean directory;
+        final long size;
+        final long lastModified;
+
+        //由文件扩展名推断的mime类型，无法推断时为null
+        final String contentType;
+
+        //资源内容的强实体标签，带双引号，建立索引项时计算，文件夹为null
+        final String etag;
+
+        Resource(String resource, Path path, boolean directory, long size, long lastModified, String contentType,
+                 String etag) {
+            this.resource = resource;
+            this.path = path;
+            this.directory = directory;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.etag = etag;
+        }
+    }
+}
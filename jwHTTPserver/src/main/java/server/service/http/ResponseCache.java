@@ -0,0 +1,216 @@
+package server.service.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 公共资源的响应缓存，按字节预算做LRU淘汰
+ * 缓存项保存已经序列化好的起始行、固定报文头和报文体，可以选择放在堆外内存中
+ * 同一个键的并发未命中只会触发一次加载，其余请求等待同一次加载的结果
+ * 缓存项记录加载时资源的版本，资源的当前版本与之不同时，缓存项作废并重新加载
+ * 版本用ResourceIndex的索引项本身表示，文件每次变化都会得到新的索引项，即使大小和修改时间都没有变
+ */
+class ResponseCache {
+    //缓存的字节预算
+    private final long capacity;
+
+    //单个缓存项允许的最大字节数，更大的资源不进入缓存
+    private final long maxEntrySize;
+
+    //缓存项是否放在堆外内存中
+    private final boolean offHeap;
+
+    //按访问顺序排列的缓存项，最久未访问的在最前面，由this加锁保护
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    //正在加载的缓存项
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    ResponseCache(long capacity, long maxEntrySize, boolean offHeap) {
+        this.capacity = capacity;
+        this.maxEntrySize = Math.min(maxEntrySize, capacity);
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * 获取缓存项，未命中或已过期时调用loader加载
+     * 调用方应先排除超过getMaxEntrySize()的资源，否则每次都计为未命中
+     *
+     * @param key     缓存键
+     * @param version 资源的当前版本，不同版本之间equals不成立
+     * @param loader  加载缓存项的方法
+     * @return 缓存项，资源过大不能缓存时返回null
+     * @throws IOException 加载失败
+     */
+    Entry get(String key, Object version, Loader loader) throws IOException {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.version.equals(version)) {
+                    hitCount.incrementAndGet();
+                    return entry;
+                }
+                //资源已被修改，缓存项作废
+                remove(key);
+            }
+        }
+        missCount.incrementAndGet();
+
+        while (true) {
+            CompletableFuture<Entry> future = new CompletableFuture<>();
+            CompletableFuture<Entry> existing = loading.putIfAbsent(key, future);
+            if (existing == null) {
+                return load(key, loader, future);
+            }
+            //已有其他线程在加载同一个键，等待其结果
+            Entry entry = await(existing);
+            if (entry == null || entry.version.equals(version)) {
+                return entry;
+            }
+            //等到的是资源另一个版本的缓存项，重新加载
+        }
+    }
+
+    private Entry load(String key, Loader loader, CompletableFuture<Entry> future) throws IOException {
+        try {
+            Entry entry = loader.load();
+            if (entry != null) {
+                put(key, entry);
+            }
+            future.complete(entry);
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * 创建缓存项，报文体超过单项上限时返回null
+     *
+     * @param header  起始行和固定报文头，不含报文头末尾的CRLF
+     * @param content 报文体
+     * @param version 缓存项对应的资源版本
+     * @return 缓存项
+     */
+    Entry newEntry(byte[] header, byte[] content, Object version) {
+        if (header.length + content.length > maxEntrySize) {
+            return null;
+        }
+        return new Entry(toBuffer(header), toBuffer(content), version);
+    }
+
+    private ByteBuffer toBuffer(byte[] bytes) {
+        if (!offHeap) {
+            return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private Entry await(CompletableFuture<Entry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        remove(key);
+        entries.put(key, entry);
+        usedBytes += entry.size();
+        //淘汰最久未访问的缓存项，直到满足字节预算
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (usedBytes > capacity && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            usedBytes -= eldest.getValue().size();
+            iterator.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            usedBytes -= removed.size();
+        }
+    }
+
+    long getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * 加载缓存项的方法
+     */
+    interface Loader {
+        /**
+         * @return 缓存项，资源不能缓存时返回null
+         * @throws IOException 读取资源失败
+         */
+        Entry load() throws IOException;
+    }
+
+    /**
+     * 缓存项，缓冲区是只读的，每次写出时使用duplicate()得到独立的position
+     */
+    static class Entry {
+        final ByteBuffer header;
+        final ByteBuffer content;
+
+        //加载时资源的版本
+        final Object version;
+
+        private Entry(ByteBuffer header, ByteBuffer content, Object version) {
+            this.header = header;
+            this.content = content;
+            this.version = version;
+        }
+
+        long size() {
+            return header.capacity() + content.capacity();
+        }
+    }
+}
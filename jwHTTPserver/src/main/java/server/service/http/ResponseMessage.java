@@ -1,14 +1,30 @@
 package server.service.http;
 
+import http.date.HTTPDate;
 import http.message.HTTPMessage;
+import http.message.HeaderName;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class ResponseMessage extends HTTPMessage {
     private ResponseStatus response_status;
 
-    static {
-        set_property_split_ignore_case.add("Last-Modified".toLowerCase());
-        set_property_split_ignore_case.add("ETag".toLowerCase());
-    }
+    //以文件作为报文体时的文件通道，写出时直接从文件传输到连接，不经过堆内存
+    private FileChannel contentChannel;
+
+    //要传输的文件区间，整个文件或Range请求的若干区间
+    private List<FileRange> contentRanges;
+
+    //所有区间之后的结尾字节，如multipart/byteranges的结束分隔符，没有时为null
+    private byte[] contentEpilogue;
+
+    //来自响应缓存时，预先序列化好的起始行、固定报文头和报文体，此时报文头中只有每次响应都不同的参数
+    private ResponseCache.Entry cached;
 
     private ResponseMessage() {
         super();
@@ -17,34 +33,192 @@ public class ResponseMessage extends HTTPMessage {
     ResponseMessage(int status_code) {
         this();
         this.response_status = ResponseStatus.getStatusByCode(status_code);
+        if (response_status != ResponseStatus.STATUS_304) {
+            //没有报文体的响应也要用Content-Length标明报文体的结束，设置报文体时会被覆盖
+            setProperty(HeaderName.CONTENT_LENGTH, "0");
+        }
+    }
+
+    /**
+     * 以缓存项构建响应，之后设置的报文头参数追加在缓存的报文头之后
+     *
+     * @param cached 缓存项
+     * @return 响应
+     */
+    static ResponseMessage fromCache(ResponseCache.Entry cached) {
+        ResponseMessage res = new ResponseMessage();
+        res.response_status = ResponseStatus.STATUS_200;
+        res.cached = cached;
+        return res;
+    }
+
+    /**
+     * 以文件作为报文体，同时设置Content-Length
+     *
+     * @param contentChannel 已打开的文件通道，写出完毕后由写出方关闭
+     * @param length         报文体长度
+     */
+    void setContentChannel(FileChannel contentChannel, long length) {
+        setContentChannel(contentChannel, 0, length);
+    }
+
+    /**
+     * 以文件的一个区间作为报文体，同时设置Content-Length
+     *
+     * @param contentChannel 已打开的文件通道，写出完毕后由写出方关闭
+     * @param position       区间在文件中的起始位置
+     * @param length         区间长度
+     */
+    void setContentChannel(FileChannel contentChannel, long position, long length) {
+        setContentRanges(contentChannel, Collections.singletonList(new FileRange(null, position, length)), null);
+    }
+
+    /**
+     * 以文件的若干区间作为报文体，每个区间之前可以有一段分隔字节，同时设置Content-Length
+     *
+     * @param contentChannel 已打开的文件通道，写出完毕后由写出方关闭
+     * @param ranges         按顺序写出的区间
+     * @param epilogue       所有区间之后的结尾字节，没有时为null
+     */
+    void setContentRanges(FileChannel contentChannel, List<FileRange> ranges, byte[] epilogue) {
+        this.contentChannel = contentChannel;
+        this.contentRanges = ranges;
+        this.contentEpilogue = epilogue;
+        long length = epilogue == null ? 0 : epilogue.length;
+        for (FileRange range : ranges) {
+            length += range.length + (range.preamble == null ? 0 : range.preamble.length);
+        }
+        setProperty(HeaderName.CONTENT_LENGTH, String.valueOf(length));
+    }
+
+    ResponseStatus getStatus() {
+        return response_status;
+    }
+
+    /**
+     * @return 报文体的字节数，分块发送、长度未知时返回-1
+     */
+    long getBodyLength() {
+        if (cached != null) {
+            return cached.content.remaining();
+        }
+        if (contentChannel != null) {
+            long length = contentEpilogue == null ? 0 : contentEpilogue.length;
+            for (FileRange range : contentRanges) {
+                length += range.length + (range.preamble == null ? 0 : range.preamble.length);
+            }
+            return length;
+        }
+        if (getContentSource() != null) {
+            return getContentSource().length();
+        }
+        return getContent() == null ? 0 : getContent().length;
+    }
+
+    FileChannel getContentChannel() {
+        return contentChannel;
+    }
+
+    List<FileRange> getContentRanges() {
+        return contentRanges;
+    }
+
+    byte[] getContentEpilogue() {
+        return contentEpilogue;
+    }
+
+    /**
+     * 获取Status-Line
+     * Format = HTTP-Version Status-Code Reason-Phrase CRLF
+     *
+     * @return Status-Line，来自响应缓存时起始行已在缓存项中，返回空字符串
+     */
+    @Override
+    protected String getStartLine() {
+        return cached != null ? "" : response_status.status_line;
+    }
+
+    /**
+     * 构建待写出的缓冲区，以文件作为报文体时不包含报文体
+     * 起始行和报文头直接编码到headerBuffer中，放不下的部分编码到追加的同样大小的缓冲区中
+     *
+     * @param headerBuffer 用于编码报文头的缓冲区，会被清空，在返回的缓冲区写出完毕之前不能再使用
+     * @return 按顺序写出的缓冲区
+     */
+    ByteBuffer[] toBuffers(ByteBuffer headerBuffer) {
+        List<ByteBuffer> buffers = new ArrayList<>(4);
+        if (cached != null) {
+            buffers.add(cached.header.duplicate());
+            buffers.add(ByteBuffer.wrap(HTTPDate.dateFieldBytes()).asReadOnlyBuffer());
+        }
+        headerBuffer.clear();
+        int offset = writeTo(headerBuffer, 0);
+        headerBuffer.flip();
+        buffers.add(headerBuffer);
+        while (offset >= 0) {
+            ByteBuffer extra = ByteBuffer.allocate(headerBuffer.capacity());
+            offset = writeTo(extra, offset);
+            extra.flip();
+            buffers.add(extra);
+        }
+        if (cached != null) {
+            buffers.add(cached.content.duplicate());
+        } else if (getContent() != null && contentChannel == null) {
+            buffers.add(ByteBuffer.wrap(getContent()));
+        }
+        return buffers.toArray(new ByteBuffer[0]);
     }
 
     @Override
     public String toString() {
-        StringBuilder messageBuilder = new StringBuilder();
+        if (cached != null) {
+            ByteBuffer header = cached.header.duplicate();
+            byte[] headerBytes = new byte[header.remaining()];
+            header.get(headerBytes);
+            return buildHeader(new StringBuilder(new String(headerBytes, StandardCharsets.UTF_8))
+                    .append(new String(HTTPDate.dateFieldBytes(), StandardCharsets.US_ASCII)))
+                    + "[" + cached.content.capacity() + " bytes cached]";
+        }
+        return buildContent(buildHeader(new StringBuilder(getStartLine()))).toString();
+    }
 
-        //构建Status-Line
-        //Format = HTTP-Version Status-Code Reason-Phrase CRLF
-        messageBuilder
-                .append(HTTP_VERSION).append(" ")
-                .append(response_status.getStatus_code()).append(" ")
-                .append(response_status.getReason_phrase())
-                .append(CRLF);
+    /**
+     * 作为报文体的文件区间
+     */
+    static class FileRange {
+        //区间之前的分隔字节，没有时为null
+        final byte[] preamble;
+        final long position;
+        final long length;
 
-        return buildContent(buildHeader(messageBuilder)).toString();
+        FileRange(byte[] preamble, long position, long length) {
+            this.preamble = preamble;
+            this.position = position;
+            this.length = length;
+        }
     }
 
     enum ResponseStatus {
         STATUS_200(200, "OK"),
+        STATUS_206(206, "Partial Content"),
         STATUS_301(301, "Moved Permanently"),
         STATUS_302(302, "Found"),
         STATUS_304(304, "Not Modified"),
+        STATUS_400(400, "Bad Request"),
         STATUS_404(404, "Not Found"),
         STATUS_405(405, "Method Not Allowed"),
-        STATUS_500(500, "Internal Server Error");
+        STATUS_411(411, "Length Required"),
+        STATUS_412(412, "Precondition Failed"),
+        STATUS_413(413, "Payload Too Large"),
+        STATUS_416(416, "Range Not Satisfiable"),
+        STATUS_500(500, "Internal Server Error"),
+        STATUS_503(503, "Service Unavailable");
 
         private final int status_code;
 
+        //预先拼好的Status-Line
+        private final String status_line;
+
         public int getStatus_code() {
             return status_code;
         }
@@ -58,6 +232,7 @@ public class ResponseMessage extends HTTPMessage {
         ResponseStatus(int status_code, String reason_phrase) {
             this.status_code = status_code;
             this.reason_phrase = reason_phrase;
+            this.status_line = HTTP_VERSION + " " + status_code + " " + reason_phrase + CRLF;
         }
 
         static ResponseStatus getStatusByCode(int status_code) {
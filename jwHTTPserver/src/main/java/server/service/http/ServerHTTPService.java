@@ -1,30 +1,28 @@
 package server.service.http;
 
-import http.message.HTTPMessage;
-import http.method.HTTPMethod;
-import http.mime.MimeType;
+import http.buffer.BufferPool;
 import server.service.IService;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.file.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
- * 服务端的HTTP服务类，负责收发HTTP消息，处理接收到的HTTP消息中的内容，消息均以字符串的方式发送和接收
+ * 服务端的HTTP服务类，负责收发HTTP消息，处理接收到的HTTP消息中的内容
+ * 请求以字节为单位增量解析，响应经由每个连接的待写出队列以聚集写发送
  */
 public class ServerHTTPService implements IService, Runnable {
+    //记录的时间格式，DateTimeFormatter是线程安全的，可以共用
+    private static final DateTimeFormatter LOG_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
     //端口号
     private int port;
 
@@ -34,20 +32,43 @@ public class ServerHTTPService implements IService, Runnable {
     //监听状态为acceptable的SelectionKey的选择器
     private Selector listenerSelector;
 
-    //监听状态为writable或readable的SelectionKey的选择器
-    private Selector handlerSelector;
+    //处理可读写连接的反应器组，每个Handler独占一个Selector和一个线程
+    private Handler[] handlers;
+
+    //下一个接收新连接的Handler的序号，轮询分配
+    private int nextHandler;
+
+    //服务的可配置参数
+    private HTTPServiceConfig config;
+
+    //处理请求的工作线程池，为null时请求直接在Handler线程中处理
+    private WorkerPool workerPool;
+
+    //处理请求内容的业务对象，与服务的I/O模型无关
+    private HTTPRequestHandler requestHandler;
+
+    //连接数和文件描述符的压力，所有Handler共用
+    private ConnectionPressure pressure;
 
-    //长连接管理者对象
-    private Keeper keeper;
+    //连接读写使用的直接缓冲区池，所有Handler共用
+    private BufferPool bufferPool;
 
-    //接收的文件放置的文件夹
-    private Path receiveContentDir;
+    //服务的运行指标
+    private final Metrics metrics = new Metrics();
 
-    //服务器的名字
-    private String serverName = "JiWangHTTPServer/1.0";
+    //访问日志
+    private AccessLog accessLog;
+
+    //是否输出每个请求和响应的完整报文，仅用于调试
+    private boolean dumpMessages;
 
     public ServerHTTPService(int port) {
+        this(port, new HTTPServiceConfig());
+    }
+
+    public ServerHTTPService(int port, HTTPServiceConfig config) {
         this.port = port;
+        this.config = config;
     }
 
     /**
@@ -63,8 +84,16 @@ public class ServerHTTPService implements IService, Runnable {
         }
         try {
             listenerSelector = Selector.open();
-            handlerSelector = Selector.open();
-            keeper = new Keeper();
+            pressure = new ConnectionPressure(config.getMaxConnections());
+            bufferPool = new BufferPool(BufferPool.DEFAULT_SIZE_CLASSES, config.getBufferPoolCapacity());
+            handlers = new Handler[config.getHandlerCount()];
+            for (int i = 0; i < handlers.length; i++) {
+                handlers[i] = new Handler(Selector.open());
+            }
+            if (config.getWorkerCount() > 0) {
+                workerPool = new WorkerPool(config.getWorkerCount(), config.getWorkerQueueCapacity());
+                log("Handle requests with " + config.getWorkerCount() + " worker threads.");
+            }
 
             ServerSocketChannel httpChannel = ServerSocketChannel.open();
             httpChannel.socket().bind(new InetSocketAddress(port));
@@ -72,11 +101,13 @@ public class ServerHTTPService implements IService, Runnable {
             httpChannel.configureBlocking(false);
             httpChannel.register(listenerSelector, SelectionKey.OP_ACCEPT);
 
-            receiveContentDir = Paths.get(System.getProperty("user.dir") + "\\receive");
-            if (!Files.exists(receiveContentDir)) {
-                Files.createDirectory(receiveContentDir);
-            }
-            log("Set receive directory to " + receiveContentDir.toString());
+            requestHandler = new HTTPRequestHandler(config);
+            requestHandler.init();
+            requestHandler.setMetrics(metrics);
+            accessLog = new AccessLog(config);
+            accessLog.start();
+            dumpMessages = config.isLogEnabled(HTTPServiceConfig.LogLevel.DEBUG);
+            metrics.registerComponents(pressure, bufferPool, requestHandler.getResponseCache(), workerPool, accessLog);
             log("HTTP service start successfully.");
             isActive = true;
         } catch (IOException e) {
@@ -92,9 +123,12 @@ public class ServerHTTPService implements IService, Runnable {
      * @param s 记录
      */
     private void log(String s) {
+        if (!config.isLogEnabled(HTTPServiceConfig.LogLevel.INFO)) {
+            return;
+        }
         System.out.println(
                 '[' + this.toString() + " - "
-                        + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()) + "] "
+                        + LocalDateTime.now().format(LOG_TIME_FORMAT) + "] "
                         + s
         );
     }
@@ -105,17 +139,15 @@ public class ServerHTTPService implements IService, Runnable {
      * @param s 错误记录
      */
     private void err(String s) {
-        synchronized (System.out) {
-            System.err.println(
-                    '[' + this.toString() + " - "
-                            + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()) + "] "
-                            + s
-            );
-        }
+        System.err.println(
+                '[' + this.toString() + " - "
+                        + LocalDateTime.now().format(LOG_TIME_FORMAT) + "] "
+                        + s
+        );
     }
 
     /**
-     * 无参的运行方法，负责启动三个进程
+     * 无参的运行方法，负责启动Listener和Handler组线程
      */
     @Override
     public void run() {
@@ -124,241 +156,259 @@ public class ServerHTTPService implements IService, Runnable {
             return;
         }
         new Thread(new Listener()).start();
-        new Thread(new Handler()).start();
-        new Thread(keeper).start();
+        for (int i = 0; i < handlers.length; i++) {
+            new Thread(handlers[i], "jwHTTP-handler-" + i).start();
+        }
     }
 
     /**
      * 读取参数中SelectionKey的输入流携带的的HTTP请求
+     * 请求可能分多次到达，解析状态保存在连接上下文中，只有请求完整时才交给业务方法处理
      *
+     * @param handler   clientKey所属的Handler
      * @param clientKey 输入流中有请求的SelectionKey
      * @throws IOException IO异常
      */
-    private void read(SelectionKey clientKey) throws IOException {
+    private void read(Handler handler, SelectionKey clientKey) throws IOException {
         SocketChannel clientChannel = (SocketChannel) clientKey.channel();
+        ConnectionContext context = (ConnectionContext) clientKey.attachment();
 
-        ByteBuffer readBuffer = ByteBuffer.allocate(1024);
-        int count;
-        StringBuilder sb = new StringBuilder();
         try {
-            while ((count = clientChannel.read(readBuffer)) > 0) {
-                sb.append(new String(readBuffer.array(), 0, count));
-                readBuffer.clear();
+            int count = clientChannel.read(context.leaseReadBuffer());
+            if (count < 0) {
+                //客户端关闭了连接
+                close(clientKey);
+                return;
             }
-            String req = sb.toString();
-            System.out.println(req);
-            keeper.update(clientKey);//一律保持长连接，不根据请求头中的Connection属性值来维持或断开连接
-
-            clientKey.attach("handling");//标志该key正在处理中
-            String res = business(req);//由business业务方法来处理请求内容
-
-            System.out.println(res);
-            clientKey.attach(res);
+            metrics.bytesIn.add(count);
+            context.lastActive = handler.now;
+            process(handler, clientKey);
         } catch (IOException e) {
-            clientKey.cancel();
-            clientChannel.socket().close();
-            clientChannel.close();
+            close(clientKey);
             e.printStackTrace();
-        } finally {
-            if (clientKey.isValid()) {
-                clientKey.interestOps(SelectionKey.OP_WRITE);
-            }
         }
     }
 
     /**
-     * 业务方法，负责解析和处理请求内容
+     * 依次处理读缓冲区中所有完整的请求，支持客户端不等响应连续发送多个请求（pipelining）
+     * 响应按请求的顺序加入待写出队列，全部处理完后一起写出
+     * 有请求交给工作线程处理时暂停解析，响应写回后再继续，以保证响应的顺序
+     * 待写出的字节超过高水位时也暂停解析，剩余的请求留在读缓冲区中，积压的响应写出后再继续
      *
-     * @param req 请求字符串
-     * @return 响应字符串
+     * @param handler   clientKey所属的Handler
+     * @param clientKey 连接的SelectionKey
+     * @throws IOException IO异常
      */
-    private String business(String req) {
-        //时间格式遵循RFC1123时间规范
-        SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.CHINA);
-        sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
-        final String CRLF = HTTPMessage.getCRLF();
-        ResponseMessage res = new ResponseMessage(200);
-
-        int endPosOfHeader = req.indexOf(CRLF + CRLF);
-        //对请求切片
-        List<String> headerFields = new ArrayList<>(Arrays.asList(req.substring(0, endPosOfHeader).split(CRLF)));
-        List<String> reqLineParts = new ArrayList<>(Arrays.asList(headerFields.get(0).split(" ")));
-        headerFields.remove(0);
-
-        HTTPMethod reqMethod = HTTPMethod.valueOf(reqLineParts.get(0).toUpperCase());
-        String resource = reqLineParts.get(1);
-        String content = req.substring(endPosOfHeader + CRLF.length() * 2);
-
-        URL publicResourceUrl = this.getClass().getResource("/public" + resource);//服务器公共资源都放在public文件夹下
-        if (publicResourceUrl == null) {
-            res = new ResponseMessage(404);
-            res.setProperty(
-                    "Date",
-                    sdf.format(new Date())
-            );
-            return res.toString();
+    private void process(Handler handler, SelectionKey clientKey) throws IOException {
+        ConnectionContext context = (ConnectionContext) clientKey.attachment();
+        ByteBuffer readBuffer = context.readBuffer;
+        context.suspended = false;
+        if (readBuffer == null) {
+            //读缓冲区已归还，没有未处理的请求字节
+            write(handler, clientKey);
+            return;
         }
-        if (reqMethod == HTTPMethod.POST) {
-            Path resourcePath = receiveContentDir.resolve(resource.equals("/") ? "" : resource);
-            if (!Files.exists(resourcePath)) {
-                res = new ResponseMessage(404);
-            } else if (!Files.isDirectory(resourcePath)) {
-                res = new ResponseMessage(405);
-            } else {
-                String content_type = getField(headerFields, "content-type");
+
+        readBuffer.flip();
+        try {
+            while (!context.handling && !context.closeAfterWrite) {
+                if (context.outbound.getPendingBytes() > config.getWriteHighWaterMark()) {
+                    context.suspended = readBuffer.hasRemaining();
+                    break;
+                }
+                boolean complete;
+                if (context.parser.isIdle() && readBuffer.hasRemaining()) {
+                    context.parseStart = System.nanoTime();
+                }
                 try {
-                    String filename = putFile(content_type, content.getBytes(), resource);
-                    //回应资源被保存的位置
-                    res.setProperty("content-location", resource + filename);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    res = new ResponseMessage(500);
+                    complete = context.parser.parse(readBuffer);
+                } catch (RequestParser.MalformedRequestException mre) {
+                    //请求格式错误，回应后断开连接
+                    ResponseMessage res = new ResponseMessage(mre.getStatusCode());
+                    res.setProperty("Server", requestHandler.getServerName());
+                    context.addResponse(res, accessLog.begin(context.remoteAddress, null, res, context.parseStart));
+                    context.closeAfterWrite = true;
+                    break;
                 }
-            }
-        } else {
-            try {
-                Path resourcePath = getPath(publicResourceUrl.toURI());
-                if (!Files.exists(resourcePath)) {
-                    res = new ResponseMessage(404);
-                } else if (Files.isDirectory(resourcePath)) {
-                    if (resourcePath.equals(getPath(this.getClass().getResource("/public/").toURI()))) {
-                        res = new ResponseMessage(301);
-                        res.setProperty(
-                                "Location",
-                                "http://127.0.0.1:8089/index.html"
-                        );
-                    } else {
-                        res = new ResponseMessage(404);
-                    }
-                } else {
-                    boolean needContent = true;
-                    Date last_modified = new Date(Files.getLastModifiedTime(resourcePath).toMillis());
-                    String if_modified_since = getField(headerFields, "if-modified-since");
-                    if (!if_modified_since.isEmpty()) {
-                        Date since;
-                        try {
-                            since = sdf.parse(if_modified_since.trim());
-                        } catch (ParseException pe) {
-                            pe.printStackTrace();
-                            since = new Date();
-                        }
-                        if (since.compareTo(last_modified) >= 0 // since.compareTo(last_modified)返回值≥0,since等于或晚于last_modified,说明资源的最晚修改时间早于since
-                                || Math.abs(since.getTime() - last_modified.getTime()) < 1000) {// 而因为传来的since无法精确到毫秒，因此相差一秒以内则视为最晚修改时间早于since
-                            res = new ResponseMessage(304);
-                            needContent = false;
-                        }
-                    }
-                    res.setProperty(
-                            "Last-Modified",
-                            sdf.format(last_modified)//资源最后一次修改时间
-                    );
-                    res.setProperty(
-                            "ETag",
-                            sdf.format(last_modified)//用资源最后一次修改时间充当ETag
-                    );
-                    if (needContent) {
-                        String contentType = Files.probeContentType(resourcePath);
-                        res.setProperty(
-                                "Content-Type",
-                                contentType
-                        );
-                        byte[] fileBytes = Files.readAllBytes(resourcePath);
-                        if (contentType.toLowerCase().startsWith("image")) {
-                            fileBytes = Base64.getMimeEncoder().encode(fileBytes);
-                        }
-                        res.setContent(fileBytes);
+                if (!complete) {
+                    //请求尚未完整，等待下一次可读事件
+                    break;
+                }
+
+                metrics.record(Metrics.Phase.PARSE, System.nanoTime() - context.parseStart);
+                RequestMessage req = context.parser.getRequest();
+                context.parser.reset();
+                context.requestCount++;
+                if (dumpMessages) {
+                    System.out.println(req);
+                }
+
+                if (workerPool == null) {
+                    ResponseMessage res = handle(req);//由business业务方法来处理请求内容
+                    addResponse(handler, context, req, res);
+                    continue;
+                }
+                //交给工作线程处理，处理期间不再读取该连接的请求，之前的响应仍继续写出
+                //响应经由Handler的任务队列交回Handler线程写出
+                context.handling = true;//标志该连接正在处理中
+                boolean accepted = workerPool.submit(() -> {
+                    ResponseMessage res;
+                    try {
+                        res = handle(req);
+                    } catch (RuntimeException re) {
+                        re.printStackTrace();
+                        res = new ResponseMessage(500);
                     }
+                    ResponseMessage finalRes = res;
+                    handler.post(() -> respond(handler, clientKey, req, finalRes));
+                });
+                if (!accepted) {
+                    err("Worker queue is full, reject request. " + workerPool);
+                    req.discardUpload();
+                    context.handling = false;
+                    ResponseMessage res = new ResponseMessage(503);
+                    res.setProperty("Server", requestHandler.getServerName());
+                    addResponse(handler, context, req, res);
                 }
-            } catch (URISyntaxException use) {
-                res = new ResponseMessage(404);
-            } catch (IOException ioe) {
-                res = new ResponseMessage(500);
-            } catch (Exception e) {
-                e.printStackTrace();
             }
+        } finally {
+            readBuffer.compact();
+            context.releaseReadBufferIfEmpty();
         }
-        res.setProperty(
-                "Date",
-                sdf.format(new Date())
-        );
-        res.setProperty(
-                "Server",
-                serverName
-        );
-        return res.toString();
+        write(handler, clientKey);
     }
 
     /**
-     * 写入输出流方法
+     * 调用业务方法处理请求，并记录处理耗时
      *
-     * @param key 待写入的SelectionKey
-     * @throws IOException IO异常
+     * @param req 请求
+     * @return 响应
      */
-    private void write(SelectionKey key) throws IOException {
-        SocketChannel channel = (SocketChannel) key.channel();
-        Object obj = key.attachment();
-        key.attach("");
-        channel.write(ByteBuffer.wrap(obj.toString().getBytes()));
-        if (key.isValid()) {
-            key.interestOps(SelectionKey.OP_READ);//设置为OP_READ否则会无限写入
+    private ResponseMessage handle(RequestMessage req) {
+        long start = System.nanoTime();
+        try {
+            return requestHandler.business(req);
+        } finally {
+            metrics.record(Metrics.Phase.HANDLE, System.nanoTime() - start);
         }
     }
 
     /**
-     * 保存文件
+     * 把请求的响应加入连接的待写出队列，不保持连接时写出后关闭，读缓冲区中剩余的请求不再处理
      *
-     * @param content_type content-type
-     * @param content      内容字节流
-     * @param subDir       相对于/receive的子路径
-     * @return 保存文件的最终位置
-     * @throws Exception exception
+     * @param handler 连接所属的Handler
+     * @param context 连接上下文
+     * @param req     请求
+     * @param res     响应
      */
-    private String putFile(String content_type, byte[] content, String subDir) throws Exception {
-        if (subDir.equals("/") || subDir.equals("\\")) {
-            subDir = "";
-        }
-        if (!content_type.startsWith("text")) {
-            //只有mime类型为text/*的资源不需要Base64编解码
-            content = Base64.getMimeDecoder().decode(content);
+    private void addResponse(Handler handler, ConnectionContext context, RequestMessage req, ResponseMessage res) {
+        if (!requestHandler.keepAlive(req, res, context.requestCount, pressure.isUnderPressure(handler.now))) {
+            context.closeAfterWrite = true;
         }
-        String filename = System.currentTimeMillis() + "." + MimeType.getPostfix(content_type);
-        Path file = receiveContentDir
-                .resolve(subDir)
-                .resolve(filename);//接收到的资源以接收时的毫秒数命名
-        if (!Files.exists(file)) {
-            Files.createFile(file);
+        if (dumpMessages) {
+            System.out.println(res);
         }
-        log("Generate file at " + Files.write(file, content).toString());
-        return filename;
+        context.addResponse(res, accessLog.begin(context.remoteAddress, req, res, context.parseStart));
     }
 
-    private String getField(List<String> headerFields, String key) {
-        String field = "";
-        for (String s : headerFields) {
-            if (s.toLowerCase().startsWith(key.toLowerCase())) {
-                field = s.substring(s.indexOf(':') + 1);
-                break;
+    /**
+     * 在Handler线程中把工作线程处理完的响应加入连接的待写出队列，再继续处理读缓冲区中剩余的请求
+     *
+     * @param handler 连接所属的Handler
+     * @param key     连接的SelectionKey
+     * @param req     请求
+     * @param res     响应
+     */
+    private void respond(Handler handler, SelectionKey key, RequestMessage req, ResponseMessage res) {
+        ConnectionContext context = (ConnectionContext) key.attachment();
+        addResponse(handler, context, req, res);
+        context.handling = false;
+        if (!key.isValid()) {
+            context.closeContent();
+            return;
+        }
+        try {
+            process(handler, key);
+        } catch (IOException e) {
+            e.printStackTrace();
+            try {
+                close(key);
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
             }
         }
-        return field;
     }
 
-    private Path getPath(URI uri) throws IOException {
-        if (uri.getScheme().equals("jar")) {
-            final Map<String, String> env = new HashMap<>();
-            final String[] array = uri.toString().split("[!]");
-            final FileSystem fs;
-            FileSystem temp;
-            try {
-                temp = FileSystems.newFileSystem(URI.create(array[0]), env);
-            } catch (FileSystemAlreadyExistsException e) {
-                temp = FileSystems.getFileSystem(URI.create(array[0]));
-            }
-            fs = temp;
-            return fs.getPath(array[1]);
-        } else {
-            return Paths.get(uri);
+    /**
+     * 根据连接的状态设置关注的事件
+     * 只在待写出队列非空时关注可写事件；请求处理中、即将关闭或待写出的字节超过高水位时不再读取新的请求
+     *
+     * @param key 连接的SelectionKey
+     */
+    private void updateInterestOps(SelectionKey key) {
+        ConnectionContext context = (ConnectionContext) key.attachment();
+        int ops = 0;
+        if (!context.handling && !context.closeAfterWrite
+                && context.outbound.getPendingBytes() <= config.getWriteHighWaterMark()) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (!context.outbound.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+    }
+
+    /**
+     * 关闭连接
+     *
+     * @param key 待关闭连接的SelectionKey
+     * @throws IOException IO异常
+     */
+    private void close(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ((ConnectionContext) key.attachment()).closeContent();
+        if (channel.isOpen()) {
+            pressure.closed();
+        }
+        key.cancel();
+        channel.socket().close();
+        channel.close();
+    }
+
+    /**
+     * 写入输出流方法
+     * 按顺序写出连接待写出队列中的响应，发送缓冲区已满时保留进度，等待下一次可写事件继续写出
+     *
+     * @param handler 连接所属的Handler
+     * @param key     待写入的SelectionKey
+     * @throws IOException IO异常
+     */
+    private void write(Handler handler, SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ConnectionContext context = (ConnectionContext) key.attachment();
+        long sent = context.outbound.getSentBytes();
+        boolean flushed;
+        try {
+            flushed = context.outbound.flush(channel);
+        } catch (IOException e) {
+            close(key);
+            e.printStackTrace();
+            return;
+        }
+        if (context.outbound.getSentBytes() != sent) {
+            //客户端仍在接收响应，不视为空闲；写不出任何字节时照常计算空闲时间
+            context.lastActive = handler.now;
+        }
+        if (flushed && context.closeAfterWrite) {
+            close(key);
+            return;
+        }
+        if (context.suspended && context.outbound.getPendingBytes() <= config.getWriteHighWaterMark()) {
+            //积压的响应已经写出，继续处理读缓冲区中剩余的请求
+            process(handler, key);
+            return;
         }
+        updateInterestOps(key);
     }
 
     @Override
@@ -383,8 +433,12 @@ public class ServerHTTPService implements IService, Runnable {
                             try {
                                 if (key.isAcceptable()) {
                                     SocketChannel clientChannel = ((ServerSocketChannel) key.channel()).accept();
+                                    long acceptedAt = System.nanoTime();
                                     clientChannel.configureBlocking(false);
-                                    clientChannel.register(handlerSelector, SelectionKey.OP_READ);
+                                    metrics.acceptedConnections.increment();
+                                    //轮询地把新连接分配给Handler
+                                    handlers[nextHandler].register(clientChannel, acceptedAt);
+                                    nextHandler = (nextHandler + 1) % handlers.length;
                                 }
                             } finally {
                                 selectionKeyIterator.remove();//必须从迭代器中移除
@@ -400,119 +454,173 @@ public class ServerHTTPService implements IService, Runnable {
 
     /**
      * Inner Class Handler
-     * 监听可读写连接的选择器
+     * 监听可读写连接的选择器，每个Handler独占一个Selector和一个线程
+     * 新连接由Listener放入待注册队列，再由Handler自己的线程注册到Selector上
+     * 空闲连接的超时由Handler自己的时间轮管理，取代了原先轮询扫描所有连接的Keeper线程
      */
     private class Handler implements Runnable {
-        @Override
-        public void run() {
-            while (isActive) {
-                try {
-                    if (handlerSelector.select(1) > 0) {
-                        Iterator<SelectionKey> selectionKeyIterator = handlerSelector.selectedKeys().iterator();
+        private final Selector selector;
+        private final TimingWheel timingWheel;
 
-                        while (selectionKeyIterator.hasNext()) {
-                            SelectionKey clientKey = selectionKeyIterator.next();
-                            try {
-                                if (clientKey.isValid() && clientKey.isReadable()) {
-                                    read(clientKey);
-                                }
-                                if (clientKey.isValid() && clientKey.isWritable()) {
-                                    write(clientKey);
-                                }
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            } finally {
-                                selectionKeyIterator.remove();
-                            }
-                        }
-                    }
+        //本轮事件循环开始的时间，连接上有活动时直接记录此值
+        long now;
+
+        //下一次允许在压力下断开空闲连接的时间
+        private long nextShed;
+
+        private final Queue<PendingChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+        private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+
+        Handler(Selector selector) {
+            this.selector = selector;
+            this.now = System.currentTimeMillis();
+            this.timingWheel = new TimingWheel(config.getIdleTimeout(), now);
+        }
+
+        /**
+         * 由Listener线程调用，把新连接交给该Handler
+         *
+         * @param channel    新接受的连接
+         * @param acceptedAt 接受连接的时间（System.nanoTime）
+         */
+        void register(SocketChannel channel, long acceptedAt) {
+            pendingChannels.offer(new PendingChannel(channel, acceptedAt));
+            selector.wakeup();
+        }
+
+        /**
+         * 由其他线程（如工作线程）调用，把任务交给Handler线程执行
+         *
+         * @param task 需要在Handler线程中执行的任务
+         */
+        void post(Runnable task) {
+            pendingTasks.offer(task);
+            selector.wakeup();
+        }
+
+        /**
+         * 在Handler线程中执行任务队列中的任务
+         */
+        private void runPending() {
+            Runnable task;
+            while ((task = pendingTasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        /**
+         * 在Handler线程中注册待注册队列中的连接
+         */
+        private void registerPending() {
+            PendingChannel pending;
+            while ((pending = pendingChannels.poll()) != null) {
+                try {
+                    SelectionKey key = pending.channel.register(
+                            selector,
+                            SelectionKey.OP_READ,
+                            new ConnectionContext(
+                                    requestHandler.newParser(),
+                                    bufferPool,
+                                    metrics,
+                                    pending.channel.socket().getInetAddress().getHostAddress()
+                            )
+                    );
+                    pressure.opened();
+                    timingWheel.schedule(key, now);
+                    metrics.record(Metrics.Phase.ACCEPT, System.nanoTime() - pending.acceptedAt);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
             }
         }
-    }
 
-    /**
-     * Inner Class Keeper
-     * 监护者类维护计时来实现长连接
-     * 采用比较笨的轮询方法
-     *
-     * 了解到可以用延时队列来实现，555
-     */
-    private class Keeper implements Runnable {
-        private Map<SelectionKey, Long> lastConn;
-        private long timeout = 10000;//允许的最大超时，10秒
-        private long lazyTime = timeout / 10;//扫描的懒惰时间，所有连接的剩余超时都大于此值时休息一段时间，采用谜之系数
+        /**
+         * 断开超时的空闲连接
+         *
+         * @param key 超时连接的SelectionKey
+         */
+        private void expire(SelectionKey key) {
+            SocketChannel channel = (SocketChannel) key.channel();
+            try {
+                log("Kill connection from " + channel.socket().getRemoteSocketAddress());
+                close(key);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
-        Keeper() {
-            lastConn = new ConcurrentHashMap<>();
+        /**
+         * 处于连接压力之下时，不等空闲超时，提前断开空闲了一小段时间的长连接
+         * 只断开两个请求之间的连接：没有正在处理或待写出的响应，也没有持有读缓冲区（即没有未处理的字节）
+         * 遍历所有连接的开销较大，因此每SHED_IDLE_MILLIS最多执行一次
+         */
+        private void shedIdle() {
+            if (now < nextShed || !pressure.isUnderPressure(now)) {
+                return;
+            }
+            nextShed = now + ConnectionPressure.SHED_IDLE_MILLIS;
+            long idleMillis = Math.min(config.getIdleTimeout(), ConnectionPressure.SHED_IDLE_MILLIS);
+            for (SelectionKey key : selector.keys()) {
+                if (!key.isValid()) {
+                    continue;
+                }
+                ConnectionContext context = (ConnectionContext) key.attachment();
+                if (!context.handling && context.outbound.isEmpty() && context.parser.isIdle()
+                        && context.readBuffer == null && now - context.lastActive >= idleMillis) {
+                    try {
+                        log("Shed idle connection from " + ((SocketChannel) key.channel()).socket().getRemoteSocketAddress());
+                        close(key);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
         }
 
         @Override
-        public synchronized void run() {
+        public void run() {
             while (isActive) {
-                Iterator<Map.Entry<SelectionKey, Long>> iterator = lastConn.entrySet().iterator();
-                boolean lazy = true;
-                while (iterator.hasNext()) {
-                    Map.Entry<SelectionKey, Long> conn = iterator.next();
-                    SelectionKey key = conn.getKey();
-                    //若还在处理状态则不断开连接
-                    if (key.attachment().equals("handling")) {
-                        lastConn.replace(key, System.currentTimeMillis());
-                        continue;
-                    }
-                    SocketChannel channel = (SocketChannel) key.channel();
-                    long lastConnTimeMillis = conn.getValue();
-                    if (System.currentTimeMillis() - lastConnTimeMillis > timeout) {
+                try {
+                    selector.select(timingWheel.getTickMillis());
+                    now = System.currentTimeMillis();
+                    timingWheel.advance(now, this::expire);
+                    shedIdle();
+                    registerPending();
+                    runPending();
+                    Iterator<SelectionKey> selectionKeyIterator = selector.selectedKeys().iterator();
+
+                    while (selectionKeyIterator.hasNext()) {
+                        SelectionKey clientKey = selectionKeyIterator.next();
                         try {
-                            log("Kill connection from " + channel.socket().getRemoteSocketAddress().toString());
-                            key.cancel();
-                            channel.socket().close();
-                            channel.close();
-                        } catch (Exception e) {
+                            if (clientKey.isValid() && clientKey.isReadable()) {
+                                read(this, clientKey);
+                            }
+                            if (clientKey.isValid() && clientKey.isWritable()) {
+                                write(this, clientKey);
+                            }
+                        } catch (IOException e) {
                             e.printStackTrace();
                         } finally {
-                            iterator.remove();
+                            selectionKeyIterator.remove();
                         }
-                    } else if (System.currentTimeMillis() - lastConnTimeMillis < lazyTime * 0.67) {//又是谜之系数
-                        lazy = false;
-                    }
-                }
-                if (lazy) {
-                    try {
-                        Thread.sleep(lazyTime);
-                    } catch (InterruptedException ie) {
-                        ie.printStackTrace();
                     }
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
             }
         }
+    }
 
-        /**
-         * 在超时之内，客户端有请求发来，则重置计时器
-         *
-         * @param key 发来请求的SelectionKey
-         */
-        void update(SelectionKey key) {
-            String address = ((SocketChannel) key.channel()).socket().getRemoteSocketAddress().toString();
-            long current;
-            for (SelectionKey k : lastConn.keySet()) {
-                String aliveAddress = ((SocketChannel) key.channel()).socket().getRemoteSocketAddress().toString();
-                // getRemoteSocketAddress().toString()获得远程主机的IP和port连接的字符串，如127.0.0.1:60000
-
-                if (aliveAddress.equals(address)) {
-                    current = System.currentTimeMillis();
-                    lastConn.replace(k, current);
-                    log("Connection with " + address + " update at " + current);
-                    return;
-                }
-            }
+    /**
+     * Listener交给Handler的新连接，以及接受连接的时间
+     */
+    private static class PendingChannel {
+        final SocketChannel channel;
+        final long acceptedAt;
 
-            // 此连接是新来的连接，则新增一条记录
-            current = System.currentTimeMillis();
-            lastConn.put(key, current);
-            log("Connection with " + address + " establish at " + current);
+        PendingChannel(SocketChannel channel, long acceptedAt) {
+            this.channel = channel;
+            this.acceptedAt = acceptedAt;
         }
     }
 }
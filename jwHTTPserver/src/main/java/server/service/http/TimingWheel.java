@@ -0,0 +1,93 @@
+package server.service.http;
+
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 管理空闲连接超时的哈希时间轮，只在所属Handler的线程中使用，因此不需要同步
+ * 每个连接只在轮上登记一次，连接上有活动时只更新ConnectionContext.lastActive，不触碰时间轮
+ * 指针扫到连接所在的槽时再检查最后活动时间：已超时则回调expire，否则按新的截止时间重新放入对应的槽
+ * 轮的跨度不小于超时时间，所以每个槽里的连接都只需检查一次，不需要记录圈数
+ */
+class TimingWheel {
+    private final long tickMillis;
+    private final long timeoutMillis;
+    private final List<List<SelectionKey>> slots;
+
+    //最近一次处理过的刻度（绝对刻度数，即时间/tickMillis）
+    private long currentTick;
+
+    TimingWheel(long timeoutMillis, long now) {
+        this.timeoutMillis = timeoutMillis;
+        //刻度取超时的1/20，限制在10毫秒到1秒之间
+        this.tickMillis = Math.max(10, Math.min(1000, timeoutMillis / 20));
+        int slotCount = (int) (timeoutMillis / tickMillis) + 3;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * @return 刻度长度，Handler的select超时不应大于此值
+     */
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * 登记新连接
+     *
+     * @param key 新连接的SelectionKey，attachment为ConnectionContext
+     * @param now 当前时间
+     */
+    void schedule(SelectionKey key, long now) {
+        ((ConnectionContext) key.attachment()).lastActive = now;
+        place(key, now + timeoutMillis);
+    }
+
+    /**
+     * 把指针推进到当前时间，处理经过的所有槽
+     *
+     * @param now    当前时间
+     * @param expire 连接超时时的回调
+     */
+    void advance(long now, Consumer<SelectionKey> expire) {
+        long targetTick = now / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            int index = (int) (currentTick % slots.size());
+            List<SelectionKey> slot = slots.get(index);
+            if (slot.isEmpty()) {
+                continue;
+            }
+            slots.set(index, new ArrayList<>());
+            for (SelectionKey key : slot) {
+                if (!key.isValid()) {
+                    //连接已经被关闭，从轮上移除
+                    continue;
+                }
+                ConnectionContext context = (ConnectionContext) key.attachment();
+                if (context.handling) {
+                    //若还在处理状态则不断开连接
+                    context.lastActive = now;
+                }
+                long deadline = context.lastActive + timeoutMillis;
+                if (deadline <= now) {
+                    expire.accept(key);
+                } else {
+                    place(key, deadline);
+                }
+            }
+        }
+    }
+
+    private void place(SelectionKey key, long deadline) {
+        //向上取整，保证不会早于截止时间被检查
+        long tick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1);
+        slots.get((int) (tick % slots.size())).add(key);
+    }
+}
@@ -0,0 +1,68 @@
+package server.service.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 上传的报文体，接收时直接从读缓冲区写入接收文件夹下的临时文件，不在内存中累积
+ * 业务方法把临时文件移动到最终位置；请求未被处理或连接中断时删除临时文件
+ */
+class UploadFile implements RequestParser.BodySink {
+    //临时文件名的序号
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final Path path;
+    private final FileChannel channel;
+
+    private UploadFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * 在指定文件夹下创建临时文件
+     *
+     * @param dir 临时文件所在的文件夹，应与最终位置在同一个文件系统上
+     * @return 上传的报文体
+     * @throws IOException 创建文件失败
+     */
+    static UploadFile create(Path dir) throws IOException {
+        //不用Files.createTempFile，以免临时文件只有所有者可读，移动到最终位置后仍保留这一权限
+        Path path = dir.resolve(".upload-" + System.currentTimeMillis() + "-" + SEQUENCE.incrementAndGet() + ".part");
+        return new UploadFile(Files.createFile(path));
+    }
+
+    /**
+     * @return 临时文件的路径
+     */
+    Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public void abort() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package server.service.http;
+
+import http.buffer.BufferPool;
+import http.message.ChunkedCoding;
+import http.message.ContentSource;
+import server.service.IService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 每个连接一个虚拟线程的HTTP服务类，作为ServerHTTPService（NIO反应器模式）的替代实现
+ * 每个连接在自己的线程中阻塞地读写，请求解析和业务处理与ServerHTTPService共用RequestParser和HTTPRequestHandler
+ * 虚拟线程需要JDK 21，在更低版本的JDK上运行时退化为每个连接一个平台线程
+ */
+public class VirtualThreadHTTPService implements IService, Runnable {
+    //记录的时间格式
+    private static final DateTimeFormatter LOG_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    //端口号
+    private int port;
+
+    //标志服务运行状态
+    private boolean isActive;
+
+    //监听连接的阻塞模式ServerSocketChannel
+    private ServerSocketChannel serverChannel;
+
+    //运行连接的执行器，每个任务一个虚拟线程
+    private ExecutorService connectionExecutor;
+
+    //处理请求内容的业务对象
+    private HTTPRequestHandler requestHandler;
+
+    //服务的可配置参数
+    private HTTPServiceConfig config;
+
+    //连接数和文件描述符的压力，所有连接线程共用
+    private ConnectionPressure pressure;
+
+    //连接读写使用的直接缓冲区池，所有连接线程共用
+    private BufferPool bufferPool;
+
+    //服务的运行指标
+    private final Metrics metrics = new Metrics();
+
+    //访问日志
+    private AccessLog accessLog;
+
+    public VirtualThreadHTTPService(int port) {
+        this(port, new HTTPServiceConfig());
+    }
+
+    public VirtualThreadHTTPService(int port, HTTPServiceConfig config) {
+        this.port = port;
+        this.config = config;
+    }
+
+    /**
+     * 无参的初始化方法
+     *
+     * @throws IOException ServerSocketChannel会抛出IO异常
+     */
+    @Override
+    public void init() throws IOException {
+        log("Starting HTTP service...");
+        if (isActive) {
+            log("HTTP service has already been initialized.");
+            return;
+        }
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().bind(new InetSocketAddress(port), 1024);
+            log("HTTP service listen on port " + port);
+
+            connectionExecutor = newConnectionExecutor();
+            pressure = new ConnectionPressure(config.getMaxConnections());
+            bufferPool = new BufferPool(BufferPool.DEFAULT_SIZE_CLASSES, config.getBufferPoolCapacity());
+            requestHandler = new HTTPRequestHandler(config);
+            requestHandler.init();
+            requestHandler.setMetrics(metrics);
+            accessLog = new AccessLog(config);
+            accessLog.start();
+            metrics.registerComponents(pressure, bufferPool, requestHandler.getResponseCache(), null, accessLog);
+            log("HTTP service start successfully.");
+            isActive = true;
+        } catch (IOException e) {
+            err("Failed to start HTTP service.");
+            e.printStackTrace();
+            throw e;
+        }
+    }
+
+    /**
+     * 通过反射获得虚拟线程执行器，使源码在target为1.8时仍可编译
+     *
+     * @return 每个任务一个虚拟线程的执行器，JDK 21以下为每个任务一个平台线程的执行器
+     */
+    private ExecutorService newConnectionExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            log("Serve connections on virtual threads.");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            err("Virtual threads are not available, fall back to platform threads.");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * 打印记录
+     *
+     * @param s 记录
+     */
+    private void log(String s) {
+        if (!config.isLogEnabled(HTTPServiceConfig.LogLevel.INFO)) {
+            return;
+        }
+        System.out.println(
+                '[' + this.toString() + " - "
+                        + LocalDateTime.now().format(LOG_TIME_FORMAT) + "] "
+                        + s
+        );
+    }
+
+    /**
+     * 打印error级别的记录
+     *
+     * @param s 错误记录
+     */
+    private void err(String s) {
+        System.err.println(
+                '[' + this.toString() + " - "
+                        + LocalDateTime.now().format(LOG_TIME_FORMAT) + "] "
+                        + s
+        );
+    }
+
+    /**
+     * 无参的运行方法，接受连接并为每个连接启动一个线程
+     */
+    @Override
+    public void run() {
+        if (!isActive) {
+            err("Service Not Yet initialized.");
+            return;
+        }
+        while (isActive) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                long acceptedAt = System.nanoTime();
+                metrics.acceptedConnections.increment();
+                connectionExecutor.execute(() -> serve(channel, acceptedAt));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 在连接自己的线程中阻塞地读取请求、处理并写出响应，直到连接关闭、空闲超时或不再保持长连接
+     * 处于连接压力之下时，两个请求之间空闲超过ConnectionPressure.SHED_IDLE_MILLIS的连接被提前断开
+     * 连接线程阻塞在读取上，因此读缓冲区在整个连接期间持有；响应使用的缓冲区每次写出时借出，写完即归还
+     *
+     * 响应直接写到阻塞模式的SocketChannel，文件报文体经FileChannel.transferTo零拷贝发送
+     *
+     * @param channel    客户端连接
+     * @param acceptedAt 接受连接的时间（System.nanoTime）
+     */
+    private void serve(SocketChannel channel, long acceptedAt) {
+        Socket socket = channel.socket();
+        metrics.record(Metrics.Phase.ACCEPT, System.nanoTime() - acceptedAt);
+        RequestParser parser = requestHandler.newParser();
+        ByteBuffer readBuffer = bufferPool.acquire(ConnectionContext.READ_BUFFER_SIZE);
+        int requestCount = 0;
+        boolean keepAlive = true;
+        long idleTimeout = config.getIdleTimeout();
+        long lastActive = System.currentTimeMillis();
+        long parseStart = 0;
+        String remoteAddress = socket.getInetAddress().getHostAddress();
+        pressure.opened();
+        try {
+            //读取的超时不超过SHED_IDLE_MILLIS，以便及时发现连接压力，是否空闲超时由lastActive判断
+            socket.setSoTimeout((int) Math.min(idleTimeout, ConnectionPressure.SHED_IDLE_MILLIS));
+            //阻塞模式的SocketChannel.read不受SO_TIMEOUT约束，读取经由socket适配器的输入流以保留超时
+            ReadableByteChannel in = Channels.newChannel(socket.getInputStream());
+            while (isActive && keepAlive) {
+                int count;
+                try {
+                    count = in.read(readBuffer);
+                } catch (SocketTimeoutException ste) {
+                    long now = System.currentTimeMillis();
+                    if (now - lastActive >= idleTimeout) {
+                        throw ste;
+                    }
+                    if (parser.isIdle() && readBuffer.position() == 0 && pressure.isUnderPressure(now)
+                            && now - lastActive >= ConnectionPressure.SHED_IDLE_MILLIS) {
+                        log("Shed idle connection from " + socket.getRemoteSocketAddress());
+                        break;
+                    }
+                    continue;
+                }
+                if (count < 0) {
+                    //客户端关闭了连接
+                    break;
+                }
+                metrics.bytesIn.add(count);
+                lastActive = System.currentTimeMillis();
+                readBuffer.flip();
+                try {
+                    while (keepAlive) {
+                        if (parser.isIdle() && readBuffer.hasRemaining()) {
+                            parseStart = System.nanoTime();
+                        }
+                        if (!parser.parse(readBuffer)) {
+                            break;
+                        }
+                        metrics.record(Metrics.Phase.PARSE, System.nanoTime() - parseStart);
+                        RequestMessage req = parser.getRequest();
+                        parser.reset();
+                        long handleStart = System.nanoTime();
+                        ResponseMessage res;
+                        try {
+                            res = requestHandler.business(req);
+                        } finally {
+                            metrics.record(Metrics.Phase.HANDLE, System.nanoTime() - handleStart);
+                        }
+                        keepAlive = requestHandler.keepAlive(
+                                req, res, ++requestCount, pressure.isUnderPressure(System.currentTimeMillis())
+                        );
+                        writeResponse(res, channel, accessLog.begin(remoteAddress, req, res, parseStart));
+                    }
+                } catch (RequestParser.MalformedRequestException mre) {
+                    //请求格式错误，回应后断开连接
+                    ResponseMessage res = new ResponseMessage(mre.getStatusCode());
+                    res.setProperty("Server", requestHandler.getServerName());
+                    writeResponse(res, channel, accessLog.begin(remoteAddress, null, res, parseStart));
+                    break;
+                } finally {
+                    readBuffer.compact();
+                }
+            }
+        } catch (SocketTimeoutException ste) {
+            log("Kill connection from " + socket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            //删除尚未接收完整的上传报文体
+            parser.reset();
+            bufferPool.release(readBuffer);
+            pressure.closed();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 阻塞地写出响应
+     *
+     * @param res      响应
+     * @param target   阻塞模式的客户端连接
+     * @param logEntry 响应的访问记录，写出完毕（或失败）时提交，不记录时为null
+     * @throws IOException IO异常
+     */
+    private void writeResponse(ResponseMessage res, WritableByteChannel target, AccessLog.Entry logEntry)
+            throws IOException {
+        long start = System.nanoTime();
+        metrics.countResponse(res);
+        try {
+            writeMessage(res, target);
+        } finally {
+            long end = System.nanoTime();
+            metrics.record(Metrics.Phase.WRITE, end - start);
+            if (logEntry != null) {
+                logEntry.finish(end);
+            }
+        }
+    }
+
+    private void writeMessage(ResponseMessage res, WritableByteChannel target) throws IOException {
+        //报文体的资源在写报文头之前取出，无论在哪一步失败都在最后关闭
+        ContentSource contentSource = res.getContentSource();
+        FileChannel contentChannel = res.getContentChannel();
+        try {
+            ByteBuffer headerBuffer = bufferPool.acquire(4 * 1024);
+            try {
+                for (ByteBuffer buffer : res.toBuffers(headerBuffer)) {
+                    writeFully(buffer, target);
+                }
+            } finally {
+                bufferPool.release(headerBuffer);
+            }
+            if (contentSource != null) {
+                //流式报文体逐段读取写出，长度未知时分块
+                ByteBuffer buffer = bufferPool.acquire(16 * 1024);
+                try {
+                    boolean more;
+                    do {
+                        more = ChunkedCoding.fill(contentSource, buffer, res.isChunked());
+                        writeFully(buffer, target);
+                    } while (more);
+                } finally {
+                    bufferPool.release(buffer);
+                }
+            }
+            if (contentChannel == null) {
+                return;
+            }
+            for (ResponseMessage.FileRange range : res.getContentRanges()) {
+                if (range.preamble != null) {
+                    writeFully(ByteBuffer.wrap(range.preamble), target);
+                }
+                long position = range.position;
+                long end = range.position + range.length;
+                while (position < end) {
+                    long count = contentChannel.transferTo(position, end - position, target);
+                    if (count == 0) {
+                        //目标是阻塞的，没有进展只能是文件在发送报文头之后被截断，已无法按Content-Length发完，断开连接
+                        throw new IOException("File truncated to " + contentChannel.size()
+                                + " bytes while sending up to " + end);
+                    }
+                    metrics.bytesOut.add(count);
+                    position += count;
+                }
+            }
+            if (res.getContentEpilogue() != null) {
+                writeFully(ByteBuffer.wrap(res.getContentEpilogue()), target);
+            }
+        } finally {
+            try {
+                if (contentSource != null) {
+                    contentSource.close();
+                }
+            } finally {
+                if (contentChannel != null) {
+                    contentChannel.close();
+                }
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, WritableByteChannel target) throws IOException {
+        while (buffer.hasRemaining()) {
+            metrics.bytesOut.add(target.write(buffer));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "@port:" + port;
+    }
+}
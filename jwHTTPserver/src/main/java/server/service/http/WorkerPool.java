@@ -0,0 +1,88 @@
+package server.service.http;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界的工作线程池，用于把business()从Handler线程中卸载出去
+ * 等待队列有容量上限，队列满时拒绝任务而不是无限堆积，同时记录队列深度和拒绝次数
+ */
+class WorkerPool {
+    private final ThreadPoolExecutor executor;
+
+    //被拒绝的任务数
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    //等待队列出现过的最大深度
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+    WorkerPool(int workerCount, int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                workerCount,
+                workerCount,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "jwHTTP-worker-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param task 任务
+     * @return 任务是否被接受，队列已满时返回false
+     */
+    boolean submit(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ree) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        int depth = executor.getQueue().size();
+        int peak;
+        while (depth > (peak = peakQueueDepth.get())) {
+            if (peakQueueDepth.compareAndSet(peak, depth)) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "WorkerPool[queue=" + getQueueDepth()
+                + ", peakQueue=" + getPeakQueueDepth()
+                + ", active=" + getActiveCount()
+                + ", completed=" + getCompletedCount()
+                + ", rejected=" + getRejectedCount() + ']';
+    }
+}
@@ -0,0 +1,379 @@
+package server.service.http;
+
+import http.buffer.BufferPool;
+import http.message.ChunkedCoding;
+import http.message.ContentSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 连接的待写出队列，按入队顺序写出内存中的缓冲区和文件报文体
+ * 相邻的缓冲区用一次聚集写写出，文件报文体用FileChannel.transferTo传输
+ * 流式报文体每次只读取一段到固定大小的缓冲区中，写出后再读取下一段，长度未知时按chunked格式分块
+ * 报文头的编码缓冲区和流式报文体的缓冲区从缓冲区池借出，写出完毕后立即归还，空闲连接不占用缓冲区
+ * 发送缓冲区已满时保留剩余部分，等待下一次可写事件继续写出
+ * 只在所属Handler线程中使用，不是线程安全的
+ */
+class WriteQueue {
+    //一次聚集写最多包含的缓冲区个数
+    private static final int MAX_GATHER = 16;
+
+    //报文头编码缓冲区的大小，放不下的部分由ResponseMessage追加堆缓冲区
+    private static final int HEADER_BUFFER_SIZE = 4 * 1024;
+
+    //流式报文体每一段的缓冲区大小
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+
+    //元素为ByteBuffer、FileRegion或StreamRegion
+    private final ArrayDeque<Object> segments = new ArrayDeque<>();
+
+    //聚集写使用的数组，重复使用
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+    //尚未写出的字节数
+    private long pendingBytes;
+
+    private final BufferPool pool;
+
+    //队列中从缓冲区池借出的报文头缓冲区，按入队顺序排列，出队时归还
+    private final ArrayDeque<ByteBuffer> leased = new ArrayDeque<>();
+
+    private final Metrics metrics;
+
+    //累计已写出的字节数（与pendingBytes的计算方式相同）
+    private long writtenBytes;
+
+    //累计实际写到连接上的字节数，流式报文体写出一部分时也计入，用于判断写出是否有进展
+    private long sentBytes;
+
+    //队列中每个响应的结束位置（累计字节数）、入队时间和访问记录，组成循环数组，用于统计写出耗时
+    private long[] responseEnds = new long[8];
+    private long[] responseStarts = new long[8];
+    private AccessLog.Entry[] responseLogs = new AccessLog.Entry[8];
+    private int responseHead;
+    private int responseCount;
+
+    WriteQueue(BufferPool pool, Metrics metrics) {
+        this.pool = pool;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 把响应加入队列
+     *
+     * @param res      响应
+     * @param logEntry 响应的访问记录，全部写出后提交，不记录时为null
+     */
+    void add(ResponseMessage res, AccessLog.Entry logEntry) {
+        metrics.countResponse(res);
+        ByteBuffer headerBuffer = pool.acquire(HEADER_BUFFER_SIZE);
+        for (ByteBuffer buffer : res.toBuffers(headerBuffer)) {
+            addBuffer(buffer);
+        }
+        if (headerBuffer.hasRemaining()) {
+            leased.addLast(headerBuffer);
+        } else {
+            pool.release(headerBuffer);
+        }
+        FileChannel channel = res.getContentChannel();
+        if (channel != null) {
+            List<ResponseMessage.FileRange> ranges = res.getContentRanges();
+            for (int i = 0; i < ranges.size(); i++) {
+                ResponseMessage.FileRange range = ranges.get(i);
+                if (range.preamble != null) {
+                    addBuffer(ByteBuffer.wrap(range.preamble));
+                }
+                //同一个文件通道的多个区间，由最后一个区间负责关闭通道
+                segments.addLast(new FileRegion(channel, range.position, range.length, i == ranges.size() - 1));
+                pendingBytes += range.length;
+            }
+            if (res.getContentEpilogue() != null) {
+                addBuffer(ByteBuffer.wrap(res.getContentEpilogue()));
+            }
+        }
+        ContentSource source = res.getContentSource();
+        if (source != null) {
+            StreamRegion region = new StreamRegion(source, res.isChunked(), pool);
+            segments.addLast(region);
+            pendingBytes += region.accounted;
+        }
+        markResponseEnd(logEntry);
+    }
+
+    private void markResponseEnd(AccessLog.Entry logEntry) {
+        if (responseCount == responseEnds.length) {
+            //连续发送的请求很多时扩容，按从旧到新的顺序复制
+            long[] ends = new long[responseEnds.length * 2];
+            long[] starts = new long[responseStarts.length * 2];
+            AccessLog.Entry[] logs = new AccessLog.Entry[responseLogs.length * 2];
+            for (int i = 0; i < responseCount; i++) {
+                int index = (responseHead + i) % responseEnds.length;
+                ends[i] = responseEnds[index];
+                starts[i] = responseStarts[index];
+                logs[i] = responseLogs[index];
+            }
+            responseEnds = ends;
+            responseStarts = starts;
+            responseLogs = logs;
+            responseHead = 0;
+        }
+        int tail = (responseHead + responseCount) % responseEnds.length;
+        responseEnds[tail] = writtenBytes + pendingBytes;
+        responseStarts[tail] = System.nanoTime();
+        responseLogs[tail] = logEntry;
+        responseCount++;
+    }
+
+    /**
+     * 记录已写出的字节，统计已全部写出的响应的写出耗时并提交其访问记录
+     */
+    private void onWritten(long count) {
+        pendingBytes -= count;
+        writtenBytes += count;
+        if (responseCount == 0 || responseEnds[responseHead] > writtenBytes) {
+            return;
+        }
+        long now = System.nanoTime();
+        while (responseCount > 0 && responseEnds[responseHead] <= writtenBytes) {
+            metrics.record(Metrics.Phase.WRITE, now - responseStarts[responseHead]);
+            finishLog(now);
+        }
+    }
+
+    /**
+     * 提交队首响应的访问记录并将其移出循环数组
+     */
+    private void finishLog(long now) {
+        AccessLog.Entry logEntry = responseLogs[responseHead];
+        if (logEntry != null) {
+            responseLogs[responseHead] = null;
+            logEntry.finish(now);
+        }
+        responseHead = (responseHead + 1) % responseEnds.length;
+        responseCount--;
+    }
+
+    private void addBuffer(ByteBuffer buffer) {
+        if (buffer.hasRemaining()) {
+            segments.addLast(buffer);
+            pendingBytes += buffer.remaining();
+        }
+    }
+
+    /**
+     * 尽可能多地写出队列中的数据
+     *
+     * @param channel 连接，通常为非阻塞的SocketChannel
+     * @return 队列已全部写出时返回true
+     * @throws IOException IO异常
+     */
+    boolean flush(GatheringByteChannel channel) throws IOException {
+        while (!segments.isEmpty()) {
+            Object head = segments.peekFirst();
+            if (head instanceof FileRegion) {
+                FileRegion region = (FileRegion) head;
+                long transferred = region.channel.transferTo(region.position, region.end - region.position, channel);
+                if (transferred == 0 && region.position >= region.channel.size()) {
+                    //文件在发送报文头之后被截断，已无法按Content-Length发完，否则可写事件会一直触发
+                    throw new IOException("File truncated to " + region.channel.size()
+                            + " bytes while sending up to " + region.end);
+                }
+                region.position += transferred;
+                sentBytes += transferred;
+                metrics.bytesOut.add(transferred);
+                onWritten(transferred);
+                if (region.position < region.end) {
+                    return false;
+                }
+                pollFirst();
+                if (region.closeChannel) {
+                    region.close();
+                }
+                continue;
+            }
+            if (head instanceof StreamRegion) {
+                StreamRegion region = (StreamRegion) head;
+                boolean done = region.flush(channel);
+                metrics.bytesOut.add(region.sent);
+                sentBytes += region.sent;
+                region.sent = 0;
+                if (!done) {
+                    return false;
+                }
+                pollFirst();
+                onWritten(region.accounted);
+                region.close();
+                continue;
+            }
+
+            //收集队首连续的缓冲区，一次聚集写写出
+            int count = 0;
+            Iterator<Object> iterator = segments.iterator();
+            while (count < MAX_GATHER && iterator.hasNext()) {
+                Object segment = iterator.next();
+                if (!(segment instanceof ByteBuffer)) {
+                    break;
+                }
+                gather[count++] = (ByteBuffer) segment;
+            }
+            long written = channel.write(gather, 0, count);
+            sentBytes += written;
+            metrics.bytesOut.add(written);
+            onWritten(written);
+            for (int i = 0; i < count; i++) {
+                if (gather[i].hasRemaining()) {
+                    break;
+                }
+                pollFirst();
+            }
+            boolean drained = !gather[count - 1].hasRemaining();
+            //不保留对已写出缓冲区的引用
+            for (int i = 0; i < count; i++) {
+                gather[i] = null;
+            }
+            if (!drained) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 移除队首的元素，是借出的报文头缓冲区时归还给缓冲区池
+     */
+    private void pollFirst() {
+        Object segment = segments.pollFirst();
+        if (segment == leased.peekFirst()) {
+            pool.release(leased.pollFirst());
+        }
+    }
+
+    boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    long getSentBytes() {
+        return sentBytes;
+    }
+
+    /**
+     * 清空队列并关闭尚未传输完毕的文件报文体和流式报文体
+     */
+    void clear() {
+        for (Object segment : segments) {
+            if (segment instanceof FileRegion) {
+                ((FileRegion) segment).close();
+            } else if (segment instanceof StreamRegion) {
+                ((StreamRegion) segment).close();
+            }
+        }
+        segments.clear();
+        writtenBytes += pendingBytes;
+        pendingBytes = 0;
+        //连接关闭时未写完的响应也提交访问记录
+        long now = System.nanoTime();
+        while (responseCount > 0) {
+            finishLog(now);
+        }
+        while (!leased.isEmpty()) {
+            pool.release(leased.pollFirst());
+        }
+    }
+
+    /**
+     * 待传输的文件区间，以及已传输到的位置
+     */
+    private static class FileRegion {
+        final FileChannel channel;
+        final long end;
+        long position;
+
+        //传输完毕后是否关闭文件通道
+        final boolean closeChannel;
+
+        FileRegion(FileChannel channel, long position, long length, boolean closeChannel) {
+            this.channel = channel;
+            this.position = position;
+            this.end = position + length;
+            this.closeChannel = closeChannel;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 待写出的流式报文体，缓冲区中保存已读取（并已编码为块）但尚未写出的一段
+     * 缓冲区在第一次写出时才借出，等待前面的响应写出期间不占用
+     */
+    private static class StreamRegion {
+        final ContentSource source;
+        final boolean chunked;
+        final BufferPool pool;
+        ByteBuffer buffer;
+
+        //计入pendingBytes的字节数，长度未知时按一段计算，以便高水位生效
+        final long accounted;
+
+        //报文体是否已读完
+        boolean finished;
+
+        //上次统计之后写出的字节数
+        long sent;
+
+        StreamRegion(ContentSource source, boolean chunked, BufferPool pool) {
+            this.source = source;
+            this.chunked = chunked;
+            this.pool = pool;
+            this.accounted = source.length() >= 0 ? source.length() : STREAM_BUFFER_SIZE;
+        }
+
+        /**
+         * @return 报文体已全部写出时返回true
+         */
+        boolean flush(GatheringByteChannel channel) throws IOException {
+            if (buffer == null) {
+                buffer = pool.acquire(STREAM_BUFFER_SIZE);
+                buffer.limit(0);
+            }
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    if (finished) {
+                        return true;
+                    }
+                    finished = !ChunkedCoding.fill(source, buffer, chunked);
+                    continue;
+                }
+                sent += channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return false;
+                }
+            }
+        }
+
+        void close() {
+            pool.release(buffer);
+            buffer = null;
+            try {
+                source.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
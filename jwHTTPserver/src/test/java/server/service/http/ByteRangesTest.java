@@ -0,0 +1,89 @@
+package server.service.http;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ByteRangesTest {
+    @Test
+    public void parsesClosedRange() {
+        assertRanges(ByteRanges.parse("bytes=0-499", 1000), 0, 499);
+        assertRanges(ByteRanges.parse("bytes=500-500", 1000), 500, 500);
+    }
+
+    @Test
+    public void parsesOpenRange() {
+        assertRanges(ByteRanges.parse("bytes=900-", 1000), 900, 999);
+    }
+
+    @Test
+    public void clampsLastPositionToLength() {
+        assertRanges(ByteRanges.parse("bytes=900-5000", 1000), 900, 999);
+    }
+
+    @Test
+    public void parsesSuffixRange() {
+        assertRanges(ByteRanges.parse("bytes=-100", 1000), 900, 999);
+        //后缀长于资源时就是整个资源
+        assertRanges(ByteRanges.parse("bytes=-5000", 1000), 0, 999);
+    }
+
+    @Test
+    public void ignoresUnitCaseAndWhitespace() {
+        assertRanges(ByteRanges.parse(" Bytes= 0 - 1 ,\t-1 ", 10), 0, 1, 9, 9);
+    }
+
+    @Test
+    public void keepsOverlappingRangesInRequestOrder() {
+        assertRanges(ByteRanges.parse("bytes=500-700,0-99,600-800", 1000), 500, 700, 0, 99, 600, 800);
+        assertRanges(ByteRanges.parse("bytes=0-,-1", 10), 0, 9, 9, 9);
+    }
+
+    @Test
+    public void dropsUnsatisfiableRangesAmongSatisfiableOnes() {
+        assertRanges(ByteRanges.parse("bytes=1000-1100,0-0", 1000), 0, 0);
+    }
+
+    @Test
+    public void returnsEmptyListWhenNothingIsSatisfiable() {
+        assertTrue(ByteRanges.parse("bytes=1000-", 1000).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=1000-1100,2000-", 1000).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=-0", 1000).isEmpty());
+        //空资源没有可满足的区间
+        assertTrue(ByteRanges.parse("bytes=-10", 0).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=0-", 0).isEmpty());
+    }
+
+    @Test
+    public void returnsNullForMalformedHeader() {
+        assertNull(ByteRanges.parse("items=0-1", 1000));
+        assertNull(ByteRanges.parse("bytes=", 1000));
+        assertNull(ByteRanges.parse("bytes=,", 1000));
+        assertNull(ByteRanges.parse("bytes=5", 1000));
+        assertNull(ByteRanges.parse("bytes=a-b", 1000));
+        assertNull(ByteRanges.parse("bytes=5-4", 1000));
+        assertNull(ByteRanges.parse("bytes=--1", 1000));
+        assertNull(ByteRanges.parse("bytes=0-1,x", 1000));
+    }
+
+    @Test
+    public void returnsNullForTooManyRanges() {
+        StringBuilder sb = new StringBuilder("bytes=0-0");
+        for (int i = 1; i < ByteRanges.MAX_RANGES; i++) {
+            sb.append(',').append(i).append('-').append(i);
+        }
+        assertEquals(ByteRanges.MAX_RANGES, ByteRanges.parse(sb.toString(), 1000).size());
+        sb.append(",100-100");
+        assertNull(ByteRanges.parse(sb.toString(), 1000));
+    }
+
+    private static void assertRanges(List<long[]> ranges, long... expected) {
+        assertNotNull(ranges);
+        assertEquals(expected.length / 2, ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            assertArrayEquals(new long[]{expected[2 * i], expected[2 * i + 1]}, ranges.get(i));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package server.service.http;
+
+import http.message.HTTPMessage;
+import http.message.HeaderName;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+/**
+ * 通过业务方法检查Range请求的响应，资源为复制到临时文件夹中的index.html
+ */
+public class RangeResponseTest {
+    @ClassRule
+    public static final TemporaryFolder TEMP = new TemporaryFolder();
+
+    private static HTTPRequestHandler handler;
+    private static byte[] index;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        HTTPServiceConfig config = new HTTPServiceConfig();
+        config.setLogLevel(HTTPServiceConfig.LogLevel.ERROR);
+        config.setCacheCapacity(0);
+        config.setCompression(false);
+        //资源文件夹和接收文件夹都放在临时文件夹中
+        File publicDir = TEMP.newFolder("public");
+        Files.copy(
+                Paths.get(RangeResponseTest.class.getResource("/public/index.html").toURI()),
+                publicDir.toPath().resolve("index.html")
+        );
+        config.setResourceDir(publicDir.getPath());
+        config.setReceiveDir(TEMP.newFolder("receive").getPath());
+        handler = new HTTPRequestHandler(config);
+        handler.init();
+        index = Files.readAllBytes(publicDir.toPath().resolve("index.html"));
+    }
+
+    @Test
+    public void singleRangeIsPartialContent() throws Exception {
+        ResponseMessage res = get("bytes=0-4");
+        assertEquals(206, res.getStatus().getStatus_code());
+        assertEquals("bytes 0-4/" + index.length, res.getProperty("Content-Range"));
+        assertEquals("5", res.getProperty(HeaderName.CONTENT_LENGTH));
+        assertEquals(new String(index, 0, 5, StandardCharsets.US_ASCII), body(res));
+    }
+
+    @Test
+    public void suffixRangeCoversEndOfFile() throws Exception {
+        ResponseMessage res = get("bytes=-3");
+        assertEquals(206, res.getStatus().getStatus_code());
+        int start = index.length - 3;
+        assertEquals("bytes " + start + "-" + (index.length - 1) + "/" + index.length, res.getProperty("Content-Range"));
+        assertEquals(new String(index, start, 3, StandardCharsets.US_ASCII), body(res));
+    }
+
+    @Test
+    public void multipleRangesAreMultipart() throws Exception {
+        ResponseMessage res = get("bytes=0-1,-2,1-2");
+        assertEquals(206, res.getStatus().getStatus_code());
+        String contentType = res.getProperty("Content-Type");
+        assertTrue(contentType.startsWith("multipart/byteranges;boundary="));
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        int last = index.length - 1;
+        String expected = "\r\n--" + boundary + "\r\n"
+                + "Content-Type: text/html\r\n"
+                + "Content-Range: bytes 0-1/" + index.length + "\r\n\r\n"
+                + new String(index, 0, 2, StandardCharsets.US_ASCII)
+                + "\r\n--" + boundary + "\r\n"
+                + "Content-Type: text/html\r\n"
+                + "Content-Range: bytes " + (last - 1) + "-" + last + "/" + index.length + "\r\n\r\n"
+                + new String(index, last - 1, 2, StandardCharsets.US_ASCII)
+                + "\r\n--" + boundary + "\r\n"
+                + "Content-Type: text/html\r\n"
+                + "Content-Range: bytes 1-2/" + index.length + "\r\n\r\n"
+                + new String(index, 1, 2, StandardCharsets.US_ASCII)
+                + "\r\n--" + boundary + "--\r\n";
+        assertEquals(expected, body(res));
+        assertEquals(String.valueOf(expected.length()), res.getProperty(HeaderName.CONTENT_LENGTH));
+    }
+
+    @Test
+    public void unsatisfiableRangeIs416() throws Exception {
+        ResponseMessage res = get("bytes=" + index.length + "-");
+        assertEquals(416, res.getStatus().getStatus_code());
+        assertEquals("bytes */" + index.length, res.getProperty("Content-Range"));
+        assertNull(res.getContentChannel());
+    }
+
+    @Test
+    public void malformedRangeIsIgnored() throws Exception {
+        ResponseMessage res = get("bytes=5-4");
+        assertEquals(200, res.getStatus().getStatus_code());
+        assertNull(res.getProperty("Content-Range"));
+        assertEquals("bytes", res.getProperty("Accept-Ranges"));
+        assertEquals(new String(index, StandardCharsets.US_ASCII), body(res));
+    }
+
+    @Test
+    public void staleIfRangeServesWholeResource() throws Exception {
+        ResponseMessage res = get("bytes=0-4", "If-Range: \"stale\"");
+        assertEquals(200, res.getStatus().getStatus_code());
+        assertEquals(new String(index, StandardCharsets.US_ASCII), body(res));
+    }
+
+    private static ResponseMessage get(String range, String... fields) throws Exception {
+        StringBuilder sb = new StringBuilder("GET /index.html HTTP/1.1\r\n")
+                .append(HTTPMessage.BODY_ENCODING).append(": ").append(HTTPMessage.BODY_ENCODING_BINARY).append("\r\n")
+                .append("Range: ").append(range).append("\r\n");
+        for (String field : fields) {
+            sb.append(field).append("\r\n");
+        }
+        sb.append("\r\n");
+        RequestParser parser = new RequestParser(0, (request, length) -> RequestParser.BodySink.DISCARD);
+        assertTrue(parser.parse(ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.US_ASCII))));
+        return handler.business(parser.getRequest());
+    }
+
+    /**
+     * 按写出方的顺序拼接报文体，并关闭文件通道
+     */
+    private static String body(ResponseMessage res) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel channel = res.getContentChannel()) {
+            assertNotNull(channel);
+            for (ResponseMessage.FileRange range : res.getContentRanges()) {
+                if (range.preamble != null) {
+                    out.write(range.preamble);
+                }
+                ByteBuffer buffer = ByteBuffer.allocate((int) range.length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, range.position + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                out.write(buffer.array(), 0, buffer.position());
+            }
+            if (res.getContentEpilogue() != null) {
+                out.write(res.getContentEpilogue());
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,230 @@
+package server.service.http;
+
+import http.message.HeaderName;
+import http.method.HTTPMethod;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class RequestParserTest {
+    private static final long MAX_BODY_SIZE = 16;
+
+    private RequestParser parser;
+
+    //最近一个报文体的去向
+    private CollectingSink sink;
+
+    @Before
+    public void setUp() {
+        parser = new RequestParser(MAX_BODY_SIZE, (request, length) -> sink = new CollectingSink());
+    }
+
+    @Test
+    public void parsesCompleteRequest() throws Exception {
+        assertTrue(parser.isIdle());
+        assertTrue(parser.parse(buffer("GET /index.html HTTP/1.1\r\nHost: localhost\r\nAccept:  text/html \r\n\r\n")));
+        RequestMessage req = parser.getRequest();
+        assertEquals(HTTPMethod.GET, req.getMethod());
+        assertEquals("/index.html", req.getResource());
+        assertFalse(req.isHTTP10());
+        assertEquals("localhost", req.getField(HeaderName.HOST));
+        assertEquals("text/html", req.getField("accept"));
+        assertEquals("", req.getField(HeaderName.CONTENT_LENGTH));
+        assertNull(sink);
+    }
+
+    @Test
+    public void parsesHeadSplitAtEveryByte() throws Exception {
+        byte[] bytes = "GET /a HTTP/1.0\r\nHost: h\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < bytes.length - 1; i++) {
+            assertFalse(parser.parse(ByteBuffer.wrap(bytes, i, 1)));
+            assertFalse(parser.isIdle());
+        }
+        assertTrue(parser.parse(ByteBuffer.wrap(bytes, bytes.length - 1, 1)));
+        assertEquals("/a", parser.getRequest().getResource());
+        assertTrue(parser.getRequest().isHTTP10());
+        assertEquals("h", parser.getRequest().getField(HeaderName.HOST));
+    }
+
+    @Test
+    public void acceptsBareLineFeedsAndLeadingEmptyLines() throws Exception {
+        assertTrue(parser.parse(buffer("\r\n\nGET / HTTP/1.1\nHost: h\n\n")));
+        assertEquals("/", parser.getRequest().getResource());
+        assertEquals("h", parser.getRequest().getField(HeaderName.HOST));
+    }
+
+    @Test
+    public void leavesPipelinedRequestInBuffer() throws Exception {
+        ByteBuffer buffer = buffer("GET /1 HTTP/1.1\r\n\r\nGET /2 HTTP/1.1\r\n\r\n");
+        assertTrue(parser.parse(buffer));
+        assertEquals("/1", parser.getRequest().getResource());
+        assertEquals(19, buffer.remaining());
+        parser.reset();
+        assertTrue(parser.parse(buffer));
+        assertEquals("/2", parser.getRequest().getResource());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void framesBodyByContentLength() throws Exception {
+        ByteBuffer buffer = buffer("POST /r HTTP/1.1\r\nContent-Length: 5\r\n\r\nhel");
+        assertFalse(parser.parse(buffer));
+        assertEquals("hel", sink.toString());
+        buffer = buffer("loGET / HTTP/1.1\r\n\r\n");
+        assertTrue(parser.parse(buffer));
+        assertEquals("hello", sink.toString());
+        assertTrue(sink.finished);
+        //下一个请求的字节不属于报文体
+        assertEquals(18, buffer.remaining());
+    }
+
+    @Test
+    public void resetAbortsPartialBody() throws Exception {
+        assertFalse(parser.parse(buffer("POST /r HTTP/1.1\r\nContent-Length: 5\r\n\r\nhe")));
+        parser.reset();
+        assertTrue(sink.aborted);
+        assertFalse(sink.finished);
+        assertTrue(parser.isIdle());
+    }
+
+    @Test
+    public void acceptsBodyAtLimit() throws Exception {
+        assertTrue(parser.parse(buffer("POST /r HTTP/1.1\r\nContent-Length: 16\r\n\r\n0123456789abcdef")));
+        assertEquals("0123456789abcdef", sink.toString());
+    }
+
+    @Test
+    public void rejectsBodyOverLimitWith413() {
+        assertStatus(413, "POST /r HTTP/1.1\r\nContent-Length: 17\r\n\r\n");
+        assertNull(sink);
+    }
+
+    @Test
+    public void rejectsInvalidContentLength() {
+        assertStatus(400, "POST /r HTTP/1.1\r\nContent-Length: abc\r\n\r\n");
+        assertStatus(400, "POST /r HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsDuplicateContentLength() {
+        assertStatus(400, "POST /r HTTP/1.1\r\nContent-Length: 1\r\nContent-Length: 5\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsTransferEncodingWith411() {
+        //分块的报文体不能被当作下一个请求解析
+        assertStatus(411, "POST /r HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n0\r\n\r\n");
+        assertNull(sink);
+    }
+
+    @Test
+    public void rejectsTransferEncodingWithContentLength() {
+        assertStatus(400, "POST /r HTTP/1.1\r\nContent-Length: 5\r\nTransfer-Encoding: chunked\r\n\r\n");
+        assertStatus(400, "POST /r HTTP/1.1\r\nTransfer-Encoding: chunked\r\nContent-Length: 5\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsMalformedRequestLine() {
+        assertStatus(400, "GET\r\n\r\n");
+        assertStatus(400, "GET /index.html\r\n\r\n");
+        assertStatus(400, " / HTTP/1.1\r\n\r\n");
+        assertStatus(400, "GET  HTTP/1.1\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsUnknownMethodWith405() {
+        assertStatus(405, "BREW /pot HTTP/1.1\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsMalformedHeaderField() {
+        assertStatus(400, "GET / HTTP/1.1\r\nno colon\r\n\r\n");
+        assertStatus(400, "GET / HTTP/1.1\r\n: empty name\r\n\r\n");
+    }
+
+    @Test
+    public void rejectsTooLongLine() {
+        StringBuilder sb = new StringBuilder("GET /");
+        for (int i = 0; i < 8192; i++) {
+            sb.append('a');
+        }
+        //请求行尚未结束时就应拒绝，不必等到LF
+        assertStatus(400, sb.toString());
+    }
+
+    @Test
+    public void rejectsTooManyHeaderFields() {
+        StringBuilder sb = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i < 101; i++) {
+            sb.append("X-").append(i).append(": v\r\n");
+        }
+        sb.append("\r\n");
+        assertStatus(400, sb.toString());
+    }
+
+    @Test
+    public void rejectsTooLargeHeader() {
+        StringBuilder sb = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i < 90; i++) {
+            sb.append("X-").append(i).append(": ");
+            for (int j = 0; j < 800; j++) {
+                sb.append('v');
+            }
+            sb.append("\r\n");
+        }
+        assertStatus(400, sb.toString());
+    }
+
+    private void assertStatus(int status, String request) {
+        parser.reset();
+        try {
+            parser.parse(buffer(request));
+            fail("Expected MalformedRequestException for " + request);
+        } catch (RequestParser.MalformedRequestException mre) {
+            assertEquals(status, mre.getStatusCode());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static ByteBuffer buffer(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 把报文体收集在内存中的BodySink
+     */
+    private static class CollectingSink implements RequestParser.BodySink {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        boolean finished;
+        boolean aborted;
+
+        @Override
+        public void write(ByteBuffer buffer) {
+            while (buffer.hasRemaining()) {
+                bytes.write(buffer.get());
+            }
+        }
+
+        @Override
+        public void finish() {
+            finished = true;
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+        }
+    }
+}
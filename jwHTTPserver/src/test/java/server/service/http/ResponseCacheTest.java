@@ -0,0 +1,184 @@
+package server.service.http;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ResponseCacheTest {
+    private static final Object V1 = new Object();
+    private static final Object V2 = new Object();
+
+    @Test
+    public void loadsOnceThenHits() throws IOException {
+        ResponseCache cache = new ResponseCache(1000, 100, false);
+        AtomicInteger loads = new AtomicInteger();
+        ResponseCache.Entry first = cache.get("/a", V1, () -> {
+            loads.incrementAndGet();
+            return entry(cache, 10, V1);
+        });
+        ResponseCache.Entry second = cache.get("/a", V1, () -> {
+            throw new AssertionError("must be a hit");
+        });
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(first.size(), cache.getUsedBytes());
+    }
+
+    @Test
+    public void newVersionInvalidatesEntry() throws IOException {
+        ResponseCache cache = new ResponseCache(1000, 100, false);
+        cache.get("/a", V1, () -> entry(cache, 10, V1));
+        ResponseCache.Entry reloaded = cache.get("/a", V2, () -> entry(cache, 20, V2));
+        assertSame(V2, reloaded.version);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(reloaded.size(), cache.getUsedBytes());
+    }
+
+    @Test
+    public void oversizedEntryIsNotCached() throws IOException {
+        ResponseCache cache = new ResponseCache(1000, 100, false);
+        assertNull(cache.newEntry(new byte[50], new byte[51], V1));
+        assertNull(cache.get("/big", V1, () -> entry(cache, 200, V1)));
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getUsedBytes());
+    }
+
+    @Test
+    public void maxEntrySizeIsCappedByCapacity() {
+        assertEquals(50, new ResponseCache(50, 100, false).getMaxEntrySize());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedWithinByteBudget() throws IOException {
+        ResponseCache cache = new ResponseCache(100, 100, false);
+        cache.get("/a", V1, () -> entry(cache, 40, V1));
+        cache.get("/b", V1, () -> entry(cache, 40, V1));
+        //访问/a之后，最久未访问的是/b
+        cache.get("/a", V1, () -> {
+            throw new AssertionError("must be a hit");
+        });
+        cache.get("/c", V1, () -> entry(cache, 40, V1));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(80, cache.getUsedBytes());
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("/b", V1, () -> {
+            loads.incrementAndGet();
+            return entry(cache, 40, V1);
+        });
+        assertEquals(1, loads.get());
+        cache.get("/c", V1, () -> {
+            throw new AssertionError("must be a hit");
+        });
+    }
+
+    @Test
+    public void offHeapEntriesAreReadOnlyDirectBuffers() {
+        ResponseCache cache = new ResponseCache(1000, 100, true);
+        ResponseCache.Entry entry = entry(cache, 10, V1);
+        assertTrue(entry.content.isDirect());
+        assertTrue(entry.content.isReadOnly());
+        assertTrue(entry.header.isReadOnly());
+    }
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        ResponseCache cache = new ResponseCache(1000, 100, false);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ResponseCache.Entry> loader = executor.submit(() -> cache.get("/a", V1, () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return entry(cache, 10, V1);
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<ResponseCache.Entry> waiter = executor.submit(() -> cache.get("/a", V1, () -> {
+                loads.incrementAndGet();
+                return entry(cache, 10, V1);
+            }));
+            //等待者应阻塞在同一次加载上
+            Thread.sleep(50);
+            assertFalse(waiter.isDone());
+            release.countDown();
+            assertSame(loader.get(5, TimeUnit.SECONDS), waiter.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void waiterForNewerVersionReloadsAfterStaleLoad() throws Exception {
+        ResponseCache cache = new ResponseCache(1000, 100, false);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ResponseCache.Entry> stale = executor.submit(() -> cache.get("/a", V1, () -> {
+                loading.countDown();
+                await(release);
+                return entry(cache, 10, V1);
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<ResponseCache.Entry> fresh = executor.submit(() -> cache.get("/a", V2, () -> entry(cache, 20, V2)));
+            Thread.sleep(50);
+            release.countDown();
+            assertSame(V1, stale.get(5, TimeUnit.SECONDS).version);
+            assertSame(V2, fresh.get(5, TimeUnit.SECONDS).version);
+            assertSame(V2, cache.get("/a", V2, () -> {
+                throw new AssertionError("must be a hit");
+            }).version);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedLoadIsNotCachedAndCanBeRetried() throws IOException {
+        ResponseCache cache = new ResponseCache(1000, 100, false);
+        try {
+            cache.get("/a", V1, () -> {
+                throw new IOException("boom");
+            });
+            fail("Expected the loader's IOException");
+        } catch (IOException expected) {
+            assertEquals("boom", expected.getMessage());
+        }
+        assertNotNull(cache.get("/a", V1, () -> entry(cache, 10, V1)));
+    }
+
+    /**
+     * 在加载方法中等待，加载方法只能抛出IOException
+     */
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ie);
+        }
+    }
+
+    /**
+     * @return 报文头和报文体合计size字节的缓存项，超过单项上限时为null
+     */
+    private static ResponseCache.Entry entry(ResponseCache cache, int size, Object version) {
+        return cache.newEntry(new byte[size / 2], new byte[size - size / 2], version);
+    }
+}
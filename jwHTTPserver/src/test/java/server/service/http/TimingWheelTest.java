@@ -0,0 +1,153 @@
+package server.service.http;
+
+import http.buffer.BufferPool;
+import org.junit.Test;
+
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+    private static final long TIMEOUT = 1000;
+
+    private final List<SelectionKey> expired = new ArrayList<>();
+
+    @Test
+    public void tickIsClampedFractionOfTimeout() {
+        assertEquals(50, new TimingWheel(1000, 0).getTickMillis());
+        assertEquals(10, new TimingWheel(100, 0).getTickMillis());
+        assertEquals(1000, new TimingWheel(100000, 0).getTickMillis());
+    }
+
+    @Test
+    public void idleConnectionExpiresAtTimeout() {
+        TimingWheel wheel = new TimingWheel(TIMEOUT, 0);
+        StubKey key = key();
+        wheel.schedule(key, 0);
+        wheel.advance(TIMEOUT - 1, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advance(TIMEOUT, expired::add);
+        assertEquals(1, expired.size());
+        assertSame(key, expired.get(0));
+    }
+
+    @Test
+    public void activityPostponesExpiry() {
+        TimingWheel wheel = new TimingWheel(TIMEOUT, 0);
+        StubKey key = key();
+        wheel.schedule(key, 0);
+        //连接上有活动时只更新lastActive，指针扫到时按新的截止时间重新放入
+        context(key).lastActive = 600;
+        wheel.advance(TIMEOUT, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advance(600 + TIMEOUT - 1, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advance(600 + TIMEOUT, expired::add);
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    public void connectionBeingHandledDoesNotExpire() {
+        TimingWheel wheel = new TimingWheel(TIMEOUT, 0);
+        StubKey key = key();
+        wheel.schedule(key, 0);
+        context(key).handling = true;
+        wheel.advance(5 * TIMEOUT, expired::add);
+        assertTrue(expired.isEmpty());
+        //处理完毕后从最后一次检查开始重新计时
+        context(key).handling = false;
+        wheel.advance(7 * TIMEOUT, expired::add);
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    public void closedConnectionIsDroppedWithoutCallback() {
+        TimingWheel wheel = new TimingWheel(TIMEOUT, 0);
+        StubKey key = key();
+        wheel.schedule(key, 0);
+        key.cancel();
+        wheel.advance(3 * TIMEOUT, expired::add);
+        assertTrue(expired.isEmpty());
+    }
+
+    @Test
+    public void expiresEachConnectionOnceInDeadlineOrder() {
+        TimingWheel wheel = new TimingWheel(TIMEOUT, 0);
+        StubKey early = key();
+        StubKey late = key();
+        wheel.schedule(early, 0);
+        wheel.schedule(late, 300);
+        wheel.advance(TIMEOUT, expired::add);
+        assertEquals(1, expired.size());
+        assertSame(early, expired.get(0));
+        wheel.advance(10 * TIMEOUT, expired::add);
+        assertEquals(2, expired.size());
+        assertSame(late, expired.get(1));
+    }
+
+    @Test
+    public void largeTimeJumpProcessesEverySlot() {
+        TimingWheel wheel = new TimingWheel(TIMEOUT, 0);
+        for (int i = 0; i < 10; i++) {
+            wheel.schedule(key(), i * 100);
+        }
+        wheel.advance(100 * TIMEOUT, expired::add);
+        assertEquals(10, expired.size());
+    }
+
+    private static StubKey key() {
+        StubKey key = new StubKey();
+        key.attach(new ConnectionContext(null, new BufferPool(BufferPool.DEFAULT_SIZE_CLASSES, 0), new Metrics(), "test"));
+        return key;
+    }
+
+    private static ConnectionContext context(SelectionKey key) {
+        return (ConnectionContext) key.attachment();
+    }
+
+    /**
+     * 只记录是否有效的SelectionKey，时间轮只使用isValid和attachment
+     */
+    private static class StubKey extends SelectionKey {
+        private boolean valid = true;
+
+        @Override
+        public SelectableChannel channel() {
+            return null;
+        }
+
+        @Override
+        public Selector selector() {
+            return null;
+        }
+
+        @Override
+        public boolean isValid() {
+            return valid;
+        }
+
+        @Override
+        public void cancel() {
+            valid = false;
+        }
+
+        @Override
+        public int interestOps() {
+            return 0;
+        }
+
+        @Override
+        public SelectionKey interestOps(int ops) {
+            return this;
+        }
+
+        @Override
+        public int readyOps() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package server.service.http;
+
+import http.buffer.BufferPool;
+import http.message.ChunkedCoding;
+import http.message.ContentSource;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * 用每次只接受少量字节的通道模拟已满的发送缓冲区，检查部分写出、缓冲区归还和文件提前结束
+ */
+public class WriteQueueTest {
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    private BufferPool pool;
+    private WriteQueue queue;
+
+    @Before
+    public void setUp() {
+        pool = new BufferPool(BufferPool.DEFAULT_SIZE_CLASSES, 1024 * 1024);
+        queue = new WriteQueue(pool, new Metrics());
+    }
+
+    @Test
+    public void partialWritesResumeInOrder() throws IOException {
+        queue.add(response("first"), null);
+        queue.add(response("second"), null);
+        byte[] expected = concat(serialize(response("first")), serialize(response("second")));
+        assertEquals(expected.length, queue.getPendingBytes());
+
+        ThrottledChannel channel = new ThrottledChannel(7);
+        int rounds = drain(channel);
+        assertTrue(rounds > 1);
+        assertArrayEquals(expected, channel.bytes());
+        assertEquals(0, queue.getPendingBytes());
+        assertEquals(expected.length, queue.getSentBytes());
+    }
+
+    @Test
+    public void fullChannelKeepsEverythingQueued() throws IOException {
+        queue.add(response("body"), null);
+        long pending = queue.getPendingBytes();
+        ThrottledChannel channel = new ThrottledChannel(0);
+        assertFalse(queue.flush(channel));
+        assertFalse(queue.isEmpty());
+        assertEquals(pending, queue.getPendingBytes());
+        assertEquals(0, queue.getSentBytes());
+    }
+
+    @Test
+    public void headerBufferIsReleasedOnceWritten() throws IOException {
+        queue.add(response("body"), null);
+        assertTrue(pool.getLeasedBytes() > 0);
+        ThrottledChannel channel = new ThrottledChannel(3);
+        assertFalse(queue.flush(channel));
+        //报文头尚未写完时缓冲区仍然借出
+        assertTrue(pool.getLeasedBytes() > 0);
+        drain(channel);
+        assertEquals(0, pool.getLeasedBytes());
+    }
+
+    @Test
+    public void clearReleasesHeaderBufferAndClosesFile() throws IOException {
+        FileChannel file = open(bytes(100));
+        ResponseMessage res = new ResponseMessage(200);
+        res.setContentChannel(file, 100);
+        queue.add(res, null);
+        queue.flush(new ThrottledChannel(5));
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getPendingBytes());
+        assertEquals(0, pool.getLeasedBytes());
+        assertFalse(file.isOpen());
+    }
+
+    @Test
+    public void fileBodyIsTransferredThroughThrottledChannel() throws IOException {
+        byte[] content = bytes(20000);
+        FileChannel file = open(content);
+        ResponseMessage res = new ResponseMessage(200);
+        res.setContentChannel(file, content.length);
+        byte[] header = serialize(res);
+        queue.add(res, null);
+
+        ThrottledChannel channel = new ThrottledChannel(1000);
+        drain(channel);
+        assertArrayEquals(concat(header, content), channel.bytes());
+        assertFalse(file.isOpen());
+        assertEquals(0, pool.getLeasedBytes());
+    }
+
+    @Test
+    public void fileRangesKeepPreamblesAndEpilogue() throws IOException {
+        byte[] content = "0123456789".getBytes(StandardCharsets.US_ASCII);
+        FileChannel file = open(content);
+        ResponseMessage res = new ResponseMessage(206);
+        res.setContentRanges(file, Arrays.asList(
+                new ResponseMessage.FileRange("[a]".getBytes(StandardCharsets.US_ASCII), 0, 2),
+                new ResponseMessage.FileRange("[b]".getBytes(StandardCharsets.US_ASCII), 7, 3)
+        ), "[end]".getBytes(StandardCharsets.US_ASCII));
+        byte[] header = serialize(res);
+        queue.add(res, null);
+
+        ThrottledChannel channel = new ThrottledChannel(2);
+        drain(channel);
+        assertEquals(
+                new String(header, StandardCharsets.US_ASCII) + "[a]01[b]789[end]",
+                new String(channel.bytes(), StandardCharsets.US_ASCII)
+        );
+        assertFalse(file.isOpen());
+    }
+
+    @Test
+    public void truncatedFileFailsInsteadOfSpinning() throws IOException {
+        FileChannel file = open(bytes(10));
+        ResponseMessage res = new ResponseMessage(200);
+        //Content-Length按截断之前的长度发出
+        res.setContentChannel(file, 50);
+        queue.add(res, null);
+
+        ThrottledChannel channel = new ThrottledChannel(4);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                if (queue.flush(channel)) {
+                    fail("Truncated file must not complete the response");
+                }
+            }
+            fail("Truncated file must fail instead of waiting for more writes");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("truncated"));
+        }
+        queue.clear();
+        assertFalse(file.isOpen());
+    }
+
+    @Test
+    public void streamBodyIsChunkedAndBufferReleased() throws IOException {
+        byte[] content = bytes(40000);
+        ResponseMessage res = new ResponseMessage(200);
+        res.setContentSource(ContentSource.of(Channels.newChannel(new ByteArrayInputStream(content)), -1));
+        byte[] header = serialize(res);
+        queue.add(res, null);
+
+        ThrottledChannel channel = new ThrottledChannel(3000);
+        drain(channel);
+        byte[] written = channel.bytes();
+        assertArrayEquals(header, Arrays.copyOf(written, header.length));
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int end = new ChunkedCoding.Decoder().decode(written, header.length, written.length - header.length, body);
+        assertEquals(written.length, end);
+        assertArrayEquals(content, body.toByteArray());
+        assertEquals(written.length, queue.getSentBytes());
+        assertEquals(0, pool.getLeasedBytes());
+    }
+
+    /**
+     * 反复写出直到队列为空
+     *
+     * @return 写出的次数
+     */
+    private int drain(ThrottledChannel channel) throws IOException {
+        int rounds = 1;
+        while (!queue.flush(channel)) {
+            if (++rounds > 100000) {
+                fail("Queue made no progress");
+            }
+        }
+        assertTrue(queue.isEmpty());
+        return rounds;
+    }
+
+    private static ResponseMessage response(String body) {
+        ResponseMessage res = new ResponseMessage(200);
+        res.setContent(body.getBytes(StandardCharsets.US_ASCII));
+        return res;
+    }
+
+    /**
+     * @return 响应的起始行、报文头和内存中的报文体
+     */
+    private static byte[] serialize(ResponseMessage res) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ByteBuffer buffer : res.toBuffers(ByteBuffer.allocate(4 * 1024))) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    private FileChannel open(byte[] content) throws IOException {
+        Path file = temp.newFile().toPath();
+        Files.write(file, content);
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        return bytes;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] bytes = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, bytes, a.length, b.length);
+        return bytes;
+    }
+
+    /**
+     * 每次写操作最多接受limit个字节的通道，模拟发送缓冲区已满的非阻塞连接
+     */
+    private static class ThrottledChannel implements GatheringByteChannel {
+        private final int limit;
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ThrottledChannel(int limit) {
+            this.limit = limit;
+        }
+
+        byte[] bytes() {
+            return out.toByteArray();
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[]{src}, 0, 1);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            int budget = limit;
+            for (int i = offset; i < offset + length && budget > 0; i++) {
+                int count = Math.min(budget, srcs[i].remaining());
+                byte[] bytes = new byte[count];
+                srcs[i].get(bytes);
+                out.write(bytes, 0, count);
+                budget -= count;
+            }
+            return limit - budget;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
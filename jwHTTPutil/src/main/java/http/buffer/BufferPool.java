@@ -0,0 +1,238 @@
+package http.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按大小分级的直接缓冲区池，多个线程（如多个Handler）共用
+ * 每一级的缓冲区从一整块直接内存（slab）中切出，空闲的缓冲区放回所属级别的空闲栈，下次直接复用
+ * 借出和归还都不分配对象，I/O路径上不再产生堆内存分配和GC压力
+ * 请求的容量超过最大级别时分配不入池的堆缓冲区，归还时直接丢弃
+ */
+public class BufferPool {
+    //默认的级别：报文头、连接读缓冲区和流式报文体、大块数据
+    public static final int[] DEFAULT_SIZE_CLASSES = {4 * 1024, 16 * 1024, 64 * 1024};
+
+    //每次向系统申请的直接内存大小，不小于该级别一个缓冲区的大小
+    private static final int SLAB_SIZE = 256 * 1024;
+
+    private static BufferPool defaultPool;
+
+    private final SizeClass[] classes;
+
+    //空闲栈中最多保留的字节数，超过时归还的缓冲区被丢弃
+    private final long maxRetainedBytes;
+
+    //所有级别空闲栈中的字节数
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    //向系统申请的直接内存总字节数
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    //请求的容量超过最大级别的次数
+    private final AtomicLong unpooledCount = new AtomicLong();
+
+    /**
+     * @param sizeClasses      从小到大排列的各级缓冲区容量
+     * @param maxRetainedBytes 空闲栈中最多保留的字节数
+     */
+    public BufferPool(int[] sizeClasses, long maxRetainedBytes) {
+        this.classes = new SizeClass[sizeClasses.length];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            if (sizeClasses[i] < 1 || (i > 0 && sizeClasses[i] <= sizeClasses[i - 1])) {
+                throw new IllegalArgumentException("size classes must be positive and ascending");
+            }
+            classes[i] = new SizeClass(sizeClasses[i]);
+        }
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * @return 进程内共用的缓冲区池，空闲时最多保留64MiB
+     */
+    public static synchronized BufferPool getDefault() {
+        if (defaultPool == null) {
+            defaultPool = new BufferPool(DEFAULT_SIZE_CLASSES, 64L * 1024 * 1024);
+        }
+        return defaultPool;
+    }
+
+    /**
+     * 借出容量不小于capacity的缓冲区，缓冲区处于清空状态
+     *
+     * @param capacity 需要的最小容量
+     * @return 缓冲区，使用完毕后必须调用release归还，且归还后不能再使用
+     */
+    public ByteBuffer acquire(int capacity) {
+        SizeClass sizeClass = classFor(capacity);
+        if (sizeClass == null) {
+            unpooledCount.incrementAndGet();
+            return ByteBuffer.allocate(capacity);
+        }
+        sizeClass.acquired.incrementAndGet();
+        ByteBuffer buffer;
+        synchronized (sizeClass) {
+            buffer = sizeClass.free.pollLast();
+            if (buffer == null) {
+                buffer = sizeClass.refill();
+            }
+        }
+        retainedBytes.addAndGet(-sizeClass.size);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区，可以是null
+     *
+     * @param buffer acquire借出的缓冲区
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        SizeClass sizeClass = classFor(buffer.capacity());
+        if (sizeClass == null || sizeClass.size != buffer.capacity()) {
+            return;
+        }
+        sizeClass.released.incrementAndGet();
+        if (retainedBytes.addAndGet(sizeClass.size) > maxRetainedBytes) {
+            //空闲的缓冲区已经够多，丢弃这一个，其内存随所属slab一起回收
+            retainedBytes.addAndGet(-sizeClass.size);
+            sizeClass.dropped.incrementAndGet();
+            return;
+        }
+        synchronized (sizeClass) {
+            sizeClass.free.addLast(buffer);
+        }
+    }
+
+    private SizeClass classFor(int capacity) {
+        for (SizeClass sizeClass : classes) {
+            if (capacity <= sizeClass.size) {
+                return sizeClass;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 向系统申请的直接内存总字节数
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @return 空闲栈中的字节数
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * @return 已借出尚未归还的字节数
+     */
+    public long getLeasedBytes() {
+        long leased = 0;
+        for (SizeClass sizeClass : classes) {
+            leased += sizeClass.getLeased() * sizeClass.size;
+        }
+        return leased;
+    }
+
+    /**
+     * @return 请求的容量超过最大级别、分配了不入池缓冲区的次数
+     */
+    public long getUnpooledCount() {
+        return unpooledCount.get();
+    }
+
+    /**
+     * @return 各级缓冲区的容量
+     */
+    public int[] getSizeClasses() {
+        int[] sizes = new int[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            sizes[i] = classes[i].size;
+        }
+        return sizes;
+    }
+
+    /**
+     * @param index 级别序号
+     * @return 该级别累计借出的次数
+     */
+    public long getAcquireCount(int index) {
+        return classes[index].acquired.get();
+    }
+
+    /**
+     * @param index 级别序号
+     * @return 该级别已借出尚未归还的缓冲区个数
+     */
+    public long getLeasedCount(int index) {
+        return classes[index].getLeased();
+    }
+
+    /**
+     * @param index 级别序号
+     * @return 该级别因空闲栈已满而丢弃的缓冲区个数
+     */
+    public long getDroppedCount(int index) {
+        return classes[index].dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("BufferPool[allocated=").append(allocatedBytes.get())
+                .append(", retained=").append(retainedBytes.get())
+                .append(", unpooled=").append(unpooledCount.get());
+        for (SizeClass sizeClass : classes) {
+            sb.append(", ").append(sizeClass.size).append(":{acquired=").append(sizeClass.acquired.get())
+                    .append(", leased=").append(sizeClass.getLeased())
+                    .append(", dropped=").append(sizeClass.dropped.get())
+                    .append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * 一个级别的缓冲区，空闲栈由该对象加锁保护
+     */
+    private class SizeClass {
+        final int size;
+
+        //后进先出，最近归还的缓冲区更可能还在CPU缓存中
+        final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+        final AtomicLong acquired = new AtomicLong();
+        final AtomicLong released = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+
+        SizeClass(int size) {
+            this.size = size;
+        }
+
+        long getLeased() {
+            return acquired.get() - released.get();
+        }
+
+        /**
+         * 申请一个slab并切分成若干缓冲区，返回其中一个，其余放入空闲栈，调用方持有锁
+         */
+        ByteBuffer refill() {
+            int count = Math.max(1, SLAB_SIZE / size);
+            ByteBuffer slab = ByteBuffer.allocateDirect(count * size);
+            allocatedBytes.addAndGet((long) count * size);
+            for (int i = 0; i < count; i++) {
+                slab.limit((i + 1) * size).position(i * size);
+                free.addLast(slab.slice());
+            }
+            //切出的缓冲区都计入空闲字节数，借出的这一个由acquire扣除
+            retainedBytes.addAndGet((long) count * size);
+            return free.pollLast();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package http.date;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP时间工具类，时间格式遵循RFC1123规范，如 Sun, 06 Nov 1994 08:49:37 GMT
+ * 当前时间的Date报文头按秒缓存为预先编码好的字节，每秒最多刷新一次，所有线程共享
+ * 格式化和解析都不依赖SimpleDateFormat，是线程安全的，解析过程不分配对象
+ */
+public final class HTTPDate {
+    private static final String[] DAYS = {"Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed"};//1970-01-01是星期四
+    private static final String[] MONTHS = {
+            "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+
+    //RFC1123格式的固定长度
+    private static final int LENGTH = 29;
+
+    //当前秒的缓存
+    private static volatile Second current = new Second(System.currentTimeMillis() / 1000);
+
+    private HTTPDate() {
+    }
+
+    /**
+     * @return 当前时间的RFC1123格式字符串
+     */
+    public static String now() {
+        return currentSecond().text;
+    }
+
+    /**
+     * @return 当前时间的完整Date报文头行（含末尾的CRLF）的字节，调用方不得修改
+     */
+    public static byte[] dateFieldBytes() {
+        return currentSecond().fieldBytes;
+    }
+
+    private static Second currentSecond() {
+        long second = System.currentTimeMillis() / 1000;
+        Second cached = current;
+        if (cached.second != second) {
+            //跨秒时刷新，多个线程同时刷新也只是得到相同的结果
+            cached = new Second(second);
+            current = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * 格式化时间
+     *
+     * @param millis 距1970-01-01T00:00:00Z的毫秒数
+     * @return RFC1123格式字符串
+     */
+    public static String format(long millis) {
+        long second = Math.floorDiv(millis, 1000);
+        Second cached = current;
+        if (cached.second == second) {
+            return cached.text;
+        }
+        char[] chars = new char[LENGTH];
+        format(second, chars);
+        return new String(chars);
+    }
+
+    private static void format(long epochSecond, char[] chars) {
+        long epochDay = Math.floorDiv(epochSecond, 86400);
+        int secondOfDay = (int) Math.floorMod(epochSecond, 86400);
+        String day = DAYS[(int) Math.floorMod(epochDay, 7)];
+
+        //由天数计算公历年月日，算法同java.time.LocalDate.ofEpochDay
+        long zeroDay = epochDay + 719528 - 60;
+        long adjust = 0;
+        if (zeroDay < 0) {
+            long adjustCycles = (zeroDay + 1) / 146097 - 1;
+            adjust = adjustCycles * 400;
+            zeroDay += -adjustCycles * 146097;
+        }
+        long yearEst = (400 * zeroDay + 591) / 146097;
+        long doyEst = zeroDay - (365 * yearEst + yearEst / 4 - yearEst / 100 + yearEst / 400);
+        if (doyEst < 0) {
+            yearEst--;
+            doyEst = zeroDay - (365 * yearEst + yearEst / 4 - yearEst / 100 + yearEst / 400);
+        }
+        yearEst += adjust;
+        int marchDoy0 = (int) doyEst;
+        int marchMonth0 = (marchDoy0 * 5 + 2) / 153;
+        int month = (marchMonth0 + 2) % 12 + 1;
+        int dom = marchDoy0 - (marchMonth0 * 306 + 5) / 10 + 1;
+        int year = (int) (yearEst + marchMonth0 / 10);
+
+        chars[0] = day.charAt(0);
+        chars[1] = day.charAt(1);
+        chars[2] = day.charAt(2);
+        chars[3] = ',';
+        chars[4] = ' ';
+        putTwoDigits(chars, 5, dom);
+        chars[7] = ' ';
+        String monthName = MONTHS[month - 1];
+        chars[8] = monthName.charAt(0);
+        chars[9] = monthName.charAt(1);
+        chars[10] = monthName.charAt(2);
+        chars[11] = ' ';
+        putTwoDigits(chars, 12, year / 100);
+        putTwoDigits(chars, 14, year % 100);
+        chars[16] = ' ';
+        putTwoDigits(chars, 17, secondOfDay / 3600);
+        chars[19] = ':';
+        putTwoDigits(chars, 20, secondOfDay / 60 % 60);
+        chars[22] = ':';
+        putTwoDigits(chars, 23, secondOfDay % 60);
+        chars[25] = ' ';
+        chars[26] = 'G';
+        chars[27] = 'M';
+        chars[28] = 'T';
+    }
+
+    private static void putTwoDigits(char[] chars, int offset, int value) {
+        chars[offset] = (char) ('0' + value / 10);
+        chars[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    /**
+     * 解析RFC1123格式的时间，星期部分不做校验
+     *
+     * @param text RFC1123格式字符串，允许首尾有空白
+     * @return 距1970-01-01T00:00:00Z的毫秒数，格式错误时返回-1
+     */
+    public static long parse(CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (end - start != LENGTH
+                || text.charAt(start + 3) != ','
+                || text.charAt(start + 4) != ' '
+                || text.charAt(start + 7) != ' '
+                || text.charAt(start + 11) != ' '
+                || text.charAt(start + 16) != ' '
+                || text.charAt(start + 19) != ':'
+                || text.charAt(start + 22) != ':'
+                || text.charAt(start + 25) != ' '
+                || text.charAt(start + 26) != 'G'
+                || text.charAt(start + 27) != 'M'
+                || text.charAt(start + 28) != 'T') {
+            return -1;
+        }
+        int dom = digits(text, start + 5, 2);
+        int month = month(text, start + 8);
+        int year = digits(text, start + 12, 4);
+        int hour = digits(text, start + 17, 2);
+        int minute = digits(text, start + 20, 2);
+        int second = digits(text, start + 23, 2);
+        if (dom < 1 || dom > 31 || month < 0 || year < 0 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return -1;
+        }
+        return (epochDay(year, month + 1, dom) * 86400 + hour * 3600 + minute * 60 + second) * 1000;
+    }
+
+    private static int digits(CharSequence text, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int month(CharSequence text, int offset) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            String name = MONTHS[i];
+            if (name.charAt(0) == text.charAt(offset)
+                    && name.charAt(1) == text.charAt(offset + 1)
+                    && name.charAt(2) == text.charAt(offset + 2)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 公历日期距1970-01-01的天数，算法同java.time.LocalDate.toEpochDay
+     */
+    private static long epochDay(long year, int month, int dom) {
+        long total = 365 * year;
+        if (year >= 0) {
+            total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        } else {
+            total -= year / -4 - year / -100 + year / -400;
+        }
+        total += (367 * month - 362) / 12;
+        total += dom - 1;
+        if (month > 2) {
+            total--;
+            boolean leap = (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+            if (!leap) {
+                total--;
+            }
+        }
+        return total - 719528;
+    }
+
+    /**
+     * 某一秒的缓存
+     */
+    private static class Second {
+        final long second;
+        final String text;
+        final byte[] fieldBytes;
+
+        Second(long second) {
+            this.second = second;
+            char[] chars = new char[LENGTH];
+            format(second, chars);
+            this.text = new String(chars);
+            this.fieldBytes = ("Date:" + text + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package http.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Transfer-Encoding: chunked的编解码
+ * Format =
+ * Chunked-Body = *chunk last-chunk CRLF
+ * chunk        = chunk-size CRLF chunk-data CRLF
+ * last-chunk   = "0" CRLF
+ * 不发送chunk-extension和trailer
+ */
+public final class ChunkedCoding {
+    public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+    public static final String CHUNKED = "chunked";
+
+    //块头的最大长度，8位十六进制数加CRLF
+    private static final int MAX_CHUNK_HEADER = 10;
+
+    //块尾的CRLF
+    private static final int CHUNK_TRAILER = 2;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private ChunkedCoding() {
+    }
+
+    /**
+     * 从报文体中读取下一段放入缓冲区，按需编码为一个块，缓冲区切换为读模式
+     * 报文体读完时，分块发送的缓冲区中是结束块，否则缓冲区为空
+     *
+     * @param source  报文体
+     * @param buffer  缓冲区，容量必须大于块头和块尾的长度之和
+     * @param chunked 是否按chunked格式编码
+     * @return 报文体还有后续内容时返回true，这是最后一段时返回false
+     * @throws IOException 读取报文体失败
+     */
+    public static boolean fill(ContentSource source, ByteBuffer buffer, boolean chunked) throws IOException {
+        buffer.clear();
+        if (!chunked) {
+            int count = source.read(buffer);
+            buffer.flip();
+            return count >= 0;
+        }
+        //先在缓冲区头部预留块头的位置，读入数据后再回填块的长度
+        buffer.position(MAX_CHUNK_HEADER).limit(buffer.capacity() - CHUNK_TRAILER);
+        int count = source.read(buffer);
+        if (count < 0) {
+            buffer.clear();
+            buffer.put((byte) '0').put((byte) '\r').put((byte) '\n').put((byte) '\r').put((byte) '\n');
+            buffer.flip();
+            return false;
+        }
+        if (count == 0) {
+            //长度为0的块会被当作结束块，这一次不发送
+            buffer.position(0).limit(0);
+            return true;
+        }
+        int end = buffer.position();
+        buffer.limit(end + CHUNK_TRAILER);
+        buffer.put((byte) '\r').put((byte) '\n');
+
+        int digits = (32 - Integer.numberOfLeadingZeros(count) + 3) / 4;
+        int start = MAX_CHUNK_HEADER - digits - 2;
+        for (int i = 0; i < digits; i++) {
+            buffer.put(start + i, HEX[(count >>> ((digits - 1 - i) * 4)) & 0xf]);
+        }
+        buffer.put(MAX_CHUNK_HEADER - 2, (byte) '\r').put(MAX_CHUNK_HEADER - 1, (byte) '\n');
+        buffer.position(start);
+        return true;
+    }
+
+    /**
+     * 分块报文体的增量解码器，报文体可以分多次交给decode，不必等到完整后再从头解码
+     * 每个报文体使用一个新的解码器
+     */
+    public static final class Decoder {
+        //块头中的长度
+        private static final int SIZE = 0;
+        //块头中长度之后的chunk-extension，忽略
+        private static final int EXTENSION = 1;
+        //块头末尾CRLF中的LF
+        private static final int SIZE_LF = 2;
+        private static final int DATA = 3;
+        //块尾CRLF中的CR
+        private static final int DATA_CR = 4;
+        //块尾CRLF中的LF
+        private static final int DATA_LF = 5;
+        //结束块之后的trailer，直到空行
+        private static final int TRAILER = 6;
+        //trailer行末CRLF中的LF
+        private static final int TRAILER_LF = 7;
+        private static final int DONE = 8;
+
+        private int state = SIZE;
+
+        //当前块的长度，DATA状态下为尚未读取的长度
+        private long size;
+
+        //当前trailer行是否为空行
+        private boolean emptyLine;
+
+        /**
+         * 解码下一段字节，已完整的块内容写入out
+         *
+         * @param bytes  包含报文体的字节
+         * @param offset 这一段开始的位置
+         * @param length 这一段的长度
+         * @param out    解码后的报文体
+         * @return 报文体结束后的位置，报文体尚不完整（需要继续交给decode）时返回-1
+         */
+        public int decode(byte[] bytes, int offset, int length, ByteArrayOutputStream out) {
+            int position = offset;
+            int end = offset + length;
+            while (position < end && state != DONE) {
+                if (state == DATA) {
+                    int count = (int) Math.min(size, end - position);
+                    out.write(bytes, position, count);
+                    position += count;
+                    size -= count;
+                    if (size == 0) {
+                        state = DATA_CR;
+                    }
+                    continue;
+                }
+                byte b = bytes[position++];
+                switch (state) {
+                    case SIZE:
+                        int digit = Character.digit(b, 16);
+                        if (digit >= 0) {
+                            size = size * 16 + digit;
+                        } else {
+                            state = b == '\r' ? SIZE_LF : EXTENSION;
+                        }
+                        break;
+                    case EXTENSION:
+                        if (b == '\r') {
+                            state = SIZE_LF;
+                        }
+                        break;
+                    case SIZE_LF:
+                        if (b != '\n') {
+                            state = b == '\r' ? SIZE_LF : EXTENSION;
+                        } else if (size == 0) {
+                            state = TRAILER;
+                            emptyLine = true;
+                        } else {
+                            state = DATA;
+                        }
+                        break;
+                    case DATA_CR:
+                        state = DATA_LF;
+                        break;
+                    case DATA_LF:
+                        state = SIZE;
+                        break;
+                    case TRAILER:
+                        if (b == '\r') {
+                            state = TRAILER_LF;
+                        } else {
+                            emptyLine = false;
+                        }
+                        break;
+                    case TRAILER_LF:
+                        if (b == '\n') {
+                            state = emptyLine ? DONE : TRAILER;
+                            emptyLine = true;
+                        } else if (b != '\r') {
+                            state = TRAILER;
+                            emptyLine = false;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return state == DONE ? position : -1;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package http.message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * 流式的报文体，写出时按需分段读取，不需要一次性放入内存
+ * 长度已知时以Content-Length标明报文体的结束，未知时以Transfer-Encoding: chunked分块发送
+ * 读取是阻塞的，写出完毕或连接中断时由写出方关闭
+ */
+public interface ContentSource extends Closeable {
+    /**
+     * @return 报文体的长度，未知时返回-1
+     */
+    long length();
+
+    /**
+     * 把报文体的下一段读入缓冲区
+     *
+     * @param buffer 处于写模式的缓冲区
+     * @return 读入的字节数，没有更多数据时返回-1
+     * @throws IOException 读取失败
+     */
+    int read(ByteBuffer buffer) throws IOException;
+
+    /**
+     * 以通道作为报文体
+     *
+     * @param channel 报文体的来源
+     * @param length  报文体长度，未知时为-1
+     * @return 报文体
+     */
+    static ContentSource of(ReadableByteChannel channel, long length) {
+        return new ContentSource() {
+            @Override
+            public long length() {
+                return length;
+            }
+
+            @Override
+            public int read(ByteBuffer buffer) throws IOException {
+                return channel.read(buffer);
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
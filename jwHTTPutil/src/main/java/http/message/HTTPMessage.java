@@ -1,21 +1,29 @@
 package http.message;
 
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public abstract class HTTPMessage {
     protected static final String HTTP_VERSION = "HTTP/1.1";
     protected static final String CRLF = "\r\n";
-    protected static List<String> set_property_split_ignore_case = new ArrayList<>();
 
-    static {
-        set_property_split_ignore_case.add("Date".toLowerCase());
-    }
+    /**
+     * 报文体编码方式的协商参数
+     * 请求方带上"binary"表示能接收原始字节的报文体；不带此参数的旧客户端仍按Base64格式收发非text类型的报文体
+     * 响应方用同一参数标明报文体实际采用的编码方式
+     */
+    public static final String BODY_ENCODING = "X-Body-Encoding";
+    public static final String BODY_ENCODING_BINARY = "binary";
+    public static final String BODY_ENCODING_BASE64 = "base64";
 
-    private Map<String, List<String>> header;
+    private final HeaderTable header;
     private byte[] content;
 
+    //流式的报文体，与content互斥
+    private ContentSource contentSource;
+
     protected HTTPMessage() {
-        this.header = new HashMap<>();
+        this.header = new HeaderTable();
         this.content = null;
     }
 
@@ -27,8 +35,110 @@ public abstract class HTTPMessage {
         return content;
     }
 
+    /**
+     * 设置报文体，同时设置Content-Length
+     *
+     * @param content 报文体的原始字节
+     */
     public void setContent(byte[] content) {
         this.content = content;
+        if (content != null) {
+            header.set(HeaderName.CONTENT_LENGTH, String.valueOf(content.length));
+        }
+    }
+
+    public ContentSource getContentSource() {
+        return contentSource;
+    }
+
+    /**
+     * 设置流式的报文体，写出时分段读取
+     * 长度已知时设置Content-Length，否则设置Transfer-Encoding: chunked
+     *
+     * @param contentSource 报文体
+     */
+    public void setContentSource(ContentSource contentSource) {
+        this.contentSource = contentSource;
+        this.content = null;
+        if (contentSource.length() >= 0) {
+            header.remove(ChunkedCoding.TRANSFER_ENCODING);
+            header.set(HeaderName.CONTENT_LENGTH, String.valueOf(contentSource.length()));
+        } else {
+            header.remove("Content-Length");
+            header.set(HeaderName.TRANSFER_ENCODING, ChunkedCoding.CHUNKED);
+        }
+    }
+
+    /**
+     * @return 报文体是否分块发送
+     */
+    public boolean isChunked() {
+        return contentSource != null && contentSource.length() < 0;
+    }
+
+    /**
+     * 获取起始行，请求报文为Request-Line，响应报文为Status-Line
+     *
+     * @return 含末尾CRLF的起始行，没有起始行时为空字符串
+     */
+    protected abstract String getStartLine();
+
+    /**
+     * 把起始行和报文头以ASCII编码直接写入调用方提供的缓冲区，报文体不写入，由调用方另行写出
+     * 缓冲区写满时返回已写出的字节偏移，调用方换一个缓冲区（或写出后清空原缓冲区）再以该偏移继续写入
+     * 非ASCII字符写为'?'
+     *
+     * @param buffer 目标缓冲区，从其position开始写入
+     * @param offset 起始行和报文头中开始写入的字节偏移，首次调用为0
+     * @return 全部写完时返回-1，否则返回下次调用的偏移
+     */
+    public int writeTo(ByteBuffer buffer, int offset) {
+        AsciiWriter writer = new AsciiWriter(buffer, offset);
+        writeHeader(writer);
+        return writer.full ? writer.position : -1;
+    }
+
+    private void writeHeader(AsciiWriter writer) {
+        writer.put(getStartLine());
+        for (int i = 0; i < header.size(); i++) {
+            HeaderName known = header.knownName(i);
+            if (known != null) {
+                //常用参数名使用预先编码好的字节
+                writer.put(known.prefix());
+            } else {
+                writer.put(header.name(i)).put(":");
+            }
+            writer.put(header.value(i)).put(CRLF);
+        }
+        //报文头部末尾要附带一个CRLF
+        writer.put(CRLF);
+    }
+
+    /**
+     * @return 起始行和报文头的字节，不含报文体
+     */
+    public byte[] getHeaderBytes() {
+        //先只计数得到长度，再写入恰好大小的缓冲区
+        AsciiWriter counter = new AsciiWriter(null, 0);
+        writeHeader(counter);
+        ByteBuffer buffer = ByteBuffer.allocate(counter.position);
+        writeTo(buffer, 0);
+        return buffer.array();
+    }
+
+    /**
+     * 构建完整报文的字节，报文体按原样拼接在报文头之后，不经过字符串转换
+     *
+     * @return 完整报文的字节
+     */
+    public byte[] toBytes() {
+        byte[] headerBytes = getHeaderBytes();
+        if (content == null) {
+            return headerBytes;
+        }
+        byte[] bytes = Arrays.copyOf(headerBytes, headerBytes.length + content.length);
+        System.arraycopy(content, 0, bytes, headerBytes.length, content.length);
+        return bytes;
     }
 
     /**
@@ -42,10 +152,10 @@ public abstract class HTTPMessage {
      * @return 构建好报文头的StringBuilder
      */
     protected StringBuilder buildHeader(StringBuilder stringBuilder) {
-        for (Map.Entry<String, List<String>> field : header.entrySet()) {
+        for (int i = 0; i < header.size(); i++) {
             stringBuilder
-                    .append(field.getKey()).append(":")
-                    .append(String.join(",", field.getValue()))
+                    .append(header.name(i)).append(":")
+                    .append(header.value(i))
                     .append(CRLF);
         }
         //报文头部末尾要附带一个CRLF
@@ -55,7 +165,7 @@ public abstract class HTTPMessage {
     }
 
     /**
-     * 构建报文体
+     * 构建报文体，报文体被当作文本，仅用于调试输出
      *
      * @param stringBuilder 已经添加起始行和报文头的StringBuilder
      * @return 构建好报文体的StringBuilder
@@ -69,49 +179,127 @@ public abstract class HTTPMessage {
     }
 
     /**
-     * 设置报文头参数，若传入空白参数字符串将不做任何操作
+     * 设置报文头参数，已有同名参数（大小写无关）时替换其值，若传入空白参数字符串将不做任何操作
+     * 参数值去掉首尾空白后原样保存，多个值由调用方用逗号分隔
      *
      * @param key    参数名
-     * @param values 参数字符串，参数之间用逗号(,)分隔
+     * @param values 参数值
      */
     public void setProperty(String key, String values) {
-        List<String> vl;
-        if (set_property_split_ignore_case.contains(key.toLowerCase())) {
-            vl = new ArrayList<>(1);
-            vl.add(values);
-        } else {
-            vl = new ArrayList<>(Arrays.asList(values.split(",|[ ]")));
-            vl.removeIf(
-                    value -> value.trim().isEmpty()
-            );
+        if (key == null || key.trim().isEmpty()) {
+            System.out.println("Property key could not be empty");
+        } else if (checkValue(values)) {
+            header.set(key, values.trim());
         }
-        setProperty(key, vl);
     }
 
     /**
-     * 设置报文参数，若传入空白参数列表将不做任何操作
+     * 设置常用的报文头参数，省去按参数名查找
      *
      * @param key    参数名
-     * @param values 参数列表
+     * @param values 参数值
      */
-    private void setProperty(String key, List<String> values) {
-        final String NOTHING_SET_MESSAGE = "Won't set this property due to no value was given.";
+    public void setProperty(HeaderName key, String values) {
+        if (checkValue(values)) {
+            header.set(key, values.trim());
+        }
+    }
 
-        if (key == null || key.trim().isEmpty()) {
-            System.out.println("Property key could not be empty");
-        } else if (values == null) {
+    private static boolean checkValue(String values) {
+        if (values == null) {
             System.out.println("Property value could not be null");
-        } else if (values.isEmpty()) {
-            System.out.println(NOTHING_SET_MESSAGE);
-        } else {
-            values.removeIf(
-                    value -> value.trim().isEmpty()//去除LMS
-            );
-            if (values.isEmpty()) {
-                System.out.println(NOTHING_SET_MESSAGE);
-            } else {
-                header.put(key, values);
+            return false;
+        }
+        if (values.trim().isEmpty()) {
+            System.out.println("Won't set this property due to no value was given.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param key 参数名，大小写无关
+     * @return 参数值，不存在时返回null
+     */
+    public String getProperty(String key) {
+        return header.get(key);
+    }
+
+    /**
+     * @param key 常用参数名
+     * @return 参数值，不存在时返回null
+     */
+    public String getProperty(HeaderName key) {
+        return header.get(key);
+    }
+
+    /**
+     * @return 报文头参数表，解析请求时由子类直接填入参数的区间
+     */
+    protected HeaderTable getHeaders() {
+        return header;
+    }
+
+    /**
+     * 把字符序列按ASCII编码写入缓冲区，跳过前offset个字节，缓冲区写满后不再写入
+     * 缓冲区为null时只计数
+     */
+    private static final class AsciiWriter {
+        private final ByteBuffer buffer;
+        private final int offset;
+
+        //已经经过的字节数，包括跳过的部分
+        private int position;
+
+        //缓冲区是否已写满
+        private boolean full;
+
+        AsciiWriter(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        AsciiWriter put(String s) {
+            if (full) {
+                return this;
+            }
+            int length = s.length();
+            if (buffer == null || position + length <= offset) {
+                position += length;
+                return this;
+            }
+            for (int i = Math.max(0, offset - position); i < length; i++) {
+                if (!buffer.hasRemaining()) {
+                    full = true;
+                    position += i;
+                    return this;
+                }
+                char c = s.charAt(i);
+                buffer.put(c < 0x80 ? (byte) c : (byte) '?');
+            }
+            position += length;
+            return this;
+        }
+
+        AsciiWriter put(byte[] bytes) {
+            if (full) {
+                return this;
+            }
+            int length = bytes.length;
+            if (buffer == null || position + length <= offset) {
+                position += length;
+                return this;
+            }
+            int from = Math.max(0, offset - position);
+            int n = Math.min(length - from, buffer.remaining());
+            buffer.put(bytes, from, n);
+            if (from + n < length) {
+                full = true;
+                position += from + n;
+                return this;
             }
+            position += length;
+            return this;
         }
     }
 }
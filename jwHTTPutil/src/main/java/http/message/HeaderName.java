@@ -0,0 +1,148 @@
+package http.message;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 常用的报文头参数名，每个参数名只有一个实例
+ * 参数名可以按字符串或字节区间大小写无关地查找，查找使用开放寻址的散列表，不分配对象
+ * 每个参数名有一个从0开始的序号，HeaderTable以序号直接定位参数
+ */
+public final class HeaderName {
+    //散列表的大小，为2的幂，远大于参数名个数以缩短探测序列
+    private static final int TABLE_SIZE = 128;
+
+    private static final HeaderName[] table = new HeaderName[TABLE_SIZE];
+
+    //已登记的参数名个数，也是下一个参数名的序号
+    private static int count;
+
+    public static final HeaderName ACCEPT = new HeaderName("Accept");
+    public static final HeaderName ACCEPT_ENCODING = new HeaderName("Accept-Encoding");
+    public static final HeaderName ACCEPT_RANGES = new HeaderName("Accept-Ranges");
+    public static final HeaderName CACHE_CONTROL = new HeaderName("Cache-Control");
+    public static final HeaderName CONNECTION = new HeaderName("Connection");
+    public static final HeaderName CONTENT_ENCODING = new HeaderName("Content-Encoding");
+    public static final HeaderName CONTENT_LENGTH = new HeaderName("Content-Length");
+    public static final HeaderName CONTENT_LOCATION = new HeaderName("Content-Location");
+    public static final HeaderName CONTENT_RANGE = new HeaderName("Content-Range");
+    public static final HeaderName CONTENT_TYPE = new HeaderName("Content-Type");
+    public static final HeaderName DATE = new HeaderName("Date");
+    public static final HeaderName ETAG = new HeaderName("ETag");
+    public static final HeaderName HOST = new HeaderName("Host");
+    public static final HeaderName IF_MATCH = new HeaderName("If-Match");
+    public static final HeaderName IF_MODIFIED_SINCE = new HeaderName("If-Modified-Since");
+    public static final HeaderName IF_NONE_MATCH = new HeaderName("If-None-Match");
+    public static final HeaderName IF_RANGE = new HeaderName("If-Range");
+    public static final HeaderName KEEP_ALIVE = new HeaderName("Keep-Alive");
+    public static final HeaderName LAST_MODIFIED = new HeaderName("Last-Modified");
+    public static final HeaderName LOCATION = new HeaderName("Location");
+    public static final HeaderName RANGE = new HeaderName("Range");
+    public static final HeaderName REFERER = new HeaderName("Referer");
+    public static final HeaderName SERVER = new HeaderName("Server");
+    public static final HeaderName TRANSFER_ENCODING = new HeaderName(ChunkedCoding.TRANSFER_ENCODING);
+    public static final HeaderName USER_AGENT = new HeaderName("User-Agent");
+    public static final HeaderName VARY = new HeaderName("Vary");
+    public static final HeaderName X_BODY_ENCODING = new HeaderName(HTTPMessage.BODY_ENCODING);
+
+    private final String name;
+
+    //写出时使用的"参数名:"的ASCII字节
+    private final byte[] prefix;
+
+    private final int ordinal;
+
+    private HeaderName(String name) {
+        this.name = name;
+        this.prefix = (name + ':').getBytes(StandardCharsets.US_ASCII);
+        this.ordinal = count++;
+        int slot = hash(name) & (TABLE_SIZE - 1);
+        while (table[slot] != null) {
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        table[slot] = this;
+    }
+
+    /**
+     * 大小写无关地查找参数名
+     *
+     * @param name 参数名
+     * @return 对应的实例，不是常用参数名时返回null
+     */
+    public static HeaderName of(String name) {
+        for (int slot = hash(name) & (TABLE_SIZE - 1); table[slot] != null; slot = (slot + 1) & (TABLE_SIZE - 1)) {
+            if (table[slot].name.equalsIgnoreCase(name)) {
+                return table[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 大小写无关地查找字节区间[from, to)中的参数名
+     *
+     * @return 对应的实例，不是常用参数名时返回null
+     */
+    public static HeaderName of(byte[] bytes, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + toLowerCase(bytes[i]);
+        }
+        for (int slot = h & (TABLE_SIZE - 1); table[slot] != null; slot = (slot + 1) & (TABLE_SIZE - 1)) {
+            if (table[slot].matches(bytes, from, to)) {
+                return table[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 常用参数名的个数，即序号的上界
+     */
+    public static int count() {
+        return count;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    int ordinal() {
+        return ordinal;
+    }
+
+    byte[] prefix() {
+        return prefix;
+    }
+
+    private boolean matches(byte[] bytes, int from, int to) {
+        if (to - from != name.length()) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (toLowerCase(bytes[i]) != toLowerCase(name.charAt(i - from))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 大小写无关的散列值，字符串和字节区间对同一个参数名得到相同的值
+     */
+    private static int hash(String s) {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++) {
+            h = 31 * h + toLowerCase(s.charAt(i));
+        }
+        return h;
+    }
+
+    private static int toLowerCase(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c & 0xff;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,269 @@
+package http.message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 扁平的报文头参数表，参数按加入顺序保存在并列的数组中
+ * 常用参数名（HeaderName）按序号直接定位，查找是一次数组访问；其他参数名大小写无关地逐个比较
+ * 解析得到的参数只记录在源字节中的区间，第一次读取时才解码成字符串
+ * 同名参数重复出现时都会保留并按顺序写出，查找得到最后一个
+ */
+public final class HeaderTable {
+    private static final int INITIAL_CAPACITY = 8;
+
+    //常用参数名，其他参数名为null
+    private HeaderName[] known = new HeaderName[INITIAL_CAPACITY];
+
+    //参数名和参数值，解析得到且尚未读取时为null
+    private String[] names = new String[INITIAL_CAPACITY];
+    private String[] values = new String[INITIAL_CAPACITY];
+
+    //解析得到的参数在source中的区间，每个参数依次为参数名起止和参数值起止
+    private int[] ranges = new int[INITIAL_CAPACITY * 4];
+
+    //解析得到的参数所在的字节
+    private byte[] source;
+
+    private int size;
+
+    //按常用参数名的序号，保存其最后一次出现的位置加1，0表示不存在
+    private final int[] slots = new int[HeaderName.count()];
+
+    /**
+     * 解析字节区间中的报文头参数行，每行以CRLF（或单独的LF）结束，没有冒号的行被忽略
+     * 参数值只记录区间，不复制字节，读取前不能修改bytes
+     *
+     * @param bytes 报文的字节
+     * @param from  第一个参数行的开始位置（起始行之后）
+     * @param to    参数行的结束位置（不含），通常为结束报文头的空行所在位置
+     * @return 参数表
+     */
+    public static HeaderTable parse(byte[] bytes, int from, int to) {
+        HeaderTable table = new HeaderTable();
+        table.setSource(bytes);
+        int lineStart = from;
+        while (lineStart < to) {
+            int lineEnd = lineStart;
+            while (lineEnd < to && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            int colon = lineStart;
+            while (colon < lineEnd && bytes[colon] != ':') {
+                colon++;
+            }
+            if (colon > lineStart && colon < lineEnd) {
+                int valueStart = colon + 1;
+                int valueEnd = lineEnd;
+                while (valueStart < valueEnd && (bytes[valueStart] == ' ' || bytes[valueStart] == '\t')) {
+                    valueStart++;
+                }
+                while (valueEnd > valueStart && (bytes[valueEnd - 1] == ' ' || bytes[valueEnd - 1] == '\t')) {
+                    valueEnd--;
+                }
+                table.addRange(lineStart, colon, valueStart, valueEnd);
+            }
+            lineStart = next;
+        }
+        return table;
+    }
+
+    /**
+     * 设置解析得到的参数所在的字节，addRange记录的区间都指向这些字节
+     *
+     * @param source 源字节，此后不能再修改
+     */
+    public void setSource(byte[] source) {
+        this.source = source;
+    }
+
+    /**
+     * 追加一个解析得到的参数，只记录区间，参数名和参数值在读取时才解码
+     * 区间在setSource设置的字节中，可以先记录区间、再设置源字节
+     *
+     * @param nameStart  参数名的开始位置
+     * @param nameEnd    参数名的结束位置（不含）
+     * @param valueStart 去掉首尾空白的参数值的开始位置
+     * @param valueEnd   参数值的结束位置（不含）
+     * @param name       参数名对应的常用参数名，不是常用参数名时为null
+     */
+    public void addRange(int nameStart, int nameEnd, int valueStart, int valueEnd, HeaderName name) {
+        int index = append(name, name == null ? null : name.getName(), null);
+        ranges[index * 4] = nameStart;
+        ranges[index * 4 + 1] = nameEnd;
+        ranges[index * 4 + 2] = valueStart;
+        ranges[index * 4 + 3] = valueEnd;
+    }
+
+    private void addRange(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        addRange(nameStart, nameEnd, valueStart, valueEnd, HeaderName.of(source, nameStart, nameEnd));
+    }
+
+    /**
+     * 设置参数，已有同名参数时替换最后一个的值，否则追加
+     *
+     * @param name  参数名，大小写无关
+     * @param value 参数值
+     */
+    public void set(String name, String value) {
+        HeaderName headerName = HeaderName.of(name);
+        if (headerName != null) {
+            set(headerName, value);
+            return;
+        }
+        int index = indexOf(name);
+        if (index < 0) {
+            append(null, name, value);
+        } else {
+            values[index] = value;
+        }
+    }
+
+    /**
+     * 设置常用参数，已有该参数时替换最后一个的值，否则追加
+     *
+     * @param name  常用参数名
+     * @param value 参数值
+     */
+    public void set(HeaderName name, String value) {
+        int index = slots[name.ordinal()] - 1;
+        if (index < 0) {
+            append(name, name.getName(), value);
+        } else {
+            values[index] = value;
+        }
+    }
+
+    /**
+     * @param name 参数名，大小写无关
+     * @return 最后一个同名参数的值，不存在时返回null
+     */
+    public String get(String name) {
+        HeaderName headerName = HeaderName.of(name);
+        if (headerName != null) {
+            return get(headerName);
+        }
+        int index = indexOf(name);
+        return index < 0 ? null : value(index);
+    }
+
+    /**
+     * @param name 常用参数名
+     * @return 最后一个该参数的值，不存在时返回null
+     */
+    public String get(HeaderName name) {
+        int index = slots[name.ordinal()] - 1;
+        return index < 0 ? null : value(index);
+    }
+
+    /**
+     * 删除所有同名参数
+     *
+     * @param name 参数名，大小写无关
+     */
+    public void remove(String name) {
+        HeaderName headerName = HeaderName.of(name);
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            boolean match = headerName != null
+                    ? known[i] == headerName
+                    : known[i] == null && name.equalsIgnoreCase(name(i));
+            if (!match) {
+                if (kept != i) {
+                    known[kept] = known[i];
+                    names[kept] = names[i];
+                    values[kept] = values[i];
+                    System.arraycopy(ranges, i * 4, ranges, kept * 4, 4);
+                }
+                kept++;
+            }
+        }
+        if (kept == size) {
+            return;
+        }
+        Arrays.fill(known, kept, size, null);
+        Arrays.fill(names, kept, size, null);
+        Arrays.fill(values, kept, size, null);
+        size = kept;
+        Arrays.fill(slots, 0);
+        for (int i = 0; i < size; i++) {
+            if (known[i] != null) {
+                slots[known[i].ordinal()] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * @return 参数的个数，重复的参数分别计数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index 参数的序号，按加入顺序
+     * @return 参数名，常用参数名为其规范写法
+     */
+    public String name(int index) {
+        if (names[index] == null) {
+            names[index] = decode(ranges[index * 4], ranges[index * 4 + 1]);
+        }
+        return names[index];
+    }
+
+    /**
+     * @param index 参数的序号，按加入顺序
+     * @return 参数值
+     */
+    public String value(int index) {
+        if (values[index] == null) {
+            values[index] = decode(ranges[index * 4 + 2], ranges[index * 4 + 3]);
+        }
+        return values[index];
+    }
+
+    /**
+     * @param index 参数的序号，按加入顺序
+     * @return 常用参数名，其他参数名返回null
+     */
+    HeaderName knownName(int index) {
+        return known[index];
+    }
+
+    private int indexOf(String name) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (known[i] == null && name.equalsIgnoreCase(name(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int append(HeaderName headerName, String name, String value) {
+        if (size == known.length) {
+            int capacity = size * 2;
+            known = Arrays.copyOf(known, capacity);
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            ranges = Arrays.copyOf(ranges, capacity * 4);
+        }
+        known[size] = headerName;
+        names[size] = name;
+        values[size] = value;
+        if (headerName != null) {
+            slots[headerName.ordinal()] = size + 1;
+        }
+        return size++;
+    }
+
+    /**
+     * 报文头按ISO-8859-1解码，每个字节对应一个字符
+     */
+    private String decode(int from, int to) {
+        return new String(source, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,132 @@
+package http.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的延迟直方图，桶的划分与HdrHistogram相同：按2的幂分段，每段再线性分为8个子桶
+ * 记录的值以微秒为单位，相对误差不超过12.5%，可记录的最大值约为2^40微秒（约12.7天），更大的值计入最后一个桶
+ * 记录只是一次原子自增，可以被多个线程同时调用；读取时得到的是近似一致的快照
+ */
+public class LatencyHistogram {
+    //每个2的幂区间分为2^SUB_BUCKET_BITS个子桶
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int MAX_EXPONENT = 40;
+
+    //桶的个数：小于SUB_BUCKET_COUNT的值每个值一个桶，之后每个指数一组子桶
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    //记录值的总和，单位纳秒
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时，单位纳秒
+     */
+    public void recordNanos(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0, nanos / 1000)));
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * @return 各桶计数的快照，与bucketUpperBound的序号对应
+     */
+    public long[] snapshot() {
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return 记录值的总和，单位纳秒
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * @return 记录的次数
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * 计算分位数
+     *
+     * @param quantile 0到1之间的分位，如0.99
+     * @return 该分位的值（所在桶的上界），单位微秒，没有记录时返回0
+     */
+    public long valueAtQuantile(double quantile) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return bucketUpperBound(i) - 1;
+            }
+        }
+        return bucketUpperBound(snapshot.length - 1) - 1;
+    }
+
+    /**
+     * 清空所有记录
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        sumNanos.reset();
+    }
+
+    /**
+     * @return 桶的个数
+     */
+    public static int bucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    /**
+     * @param index 桶的序号
+     * @return 桶的上界（不含），单位微秒
+     */
+    public static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index + 1;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKET_COUNT;
+        return (1L << exponent) + ((long) (sub + 1) << (exponent - SUB_BUCKET_BITS));
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + sub;
+    }
+}
@@ -1,17 +1,21 @@
 package http.mime;
 
 public enum MimeType {
-    IMAGE_JPEG("image/jpeg", "jpeg"),
-    IMAGE_PNG("image/png", "png"),
-    TEXT_PLAIN("text/plain", "txt"),
-    TEXT_HTML("text/html", "html");
+    IMAGE_JPEG("image/jpeg", "jpeg", false),
+    IMAGE_PNG("image/png", "png", false),
+    TEXT_PLAIN("text/plain", "txt", true),
+    TEXT_HTML("text/html", "html", true);
 
     private final String typeString;
     private final String postfix;
 
-    MimeType(String typeString, String postfix) {
+    //压缩后能明显变小，已经是压缩格式的类型（如图片）再压缩没有意义
+    private final boolean compressible;
+
+    MimeType(String typeString, String postfix, boolean compressible) {
         this.typeString = typeString;
         this.postfix = postfix;
+        this.compressible = compressible;
     }
 
     public String getTypeString() {
@@ -27,4 +31,29 @@ public enum MimeType {
         }
         return postfix;
     }
+
+    /**
+     * 判断该mime类型的报文体是否值得压缩
+     * 除了已列出的类型，text/*和常见的文本格式（JSON、JavaScript、XML）也视为可压缩
+     *
+     * @param mimeType mime类型，可以带参数
+     * @return 是否值得压缩
+     */
+    public static boolean isCompressible(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        String type = mimeType.split(";")[0].trim().toLowerCase();
+        for (MimeType mime : MimeType.values()) {
+            if (mime.typeString.equals(type)) {
+                return mime.compressible;
+            }
+        }
+        return type.startsWith("text/")
+                || type.equals("application/json")
+                || type.equals("application/javascript")
+                || type.equals("application/xml")
+                || type.endsWith("+json")
+                || type.endsWith("+xml");
+    }
 }
@@ -0,0 +1,100 @@
+package http.buffer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+    private static final int[] CLASSES = {1024, 4096};
+
+    @Test
+    public void acquireRoundsUpToSizeClass() {
+        BufferPool pool = new BufferPool(CLASSES, 1024 * 1024);
+        ByteBuffer small = pool.acquire(100);
+        ByteBuffer large = pool.acquire(1025);
+        assertEquals(1024, small.capacity());
+        assertEquals(4096, large.capacity());
+        assertTrue(small.isDirect());
+        assertEquals(0, small.position());
+        assertEquals(small.capacity(), small.limit());
+    }
+
+    @Test
+    public void firstAcquireCarvesOneSlab() {
+        BufferPool pool = new BufferPool(CLASSES, 1024 * 1024);
+        pool.acquire(1024);
+        pool.acquire(1024);
+        assertEquals(256 * 1024, pool.getAllocatedBytes());
+        assertEquals(256 * 1024 - 2 * 1024, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void releasedBufferIsReusedAndCleared() {
+        BufferPool pool = new BufferPool(CLASSES, 1024 * 1024);
+        ByteBuffer buffer = pool.acquire(1024);
+        buffer.put((byte) 1).flip();
+        pool.release(buffer);
+        //后进先出，最近归还的缓冲区先被借出
+        ByteBuffer again = pool.acquire(1024);
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(1024, again.limit());
+    }
+
+    @Test
+    public void countsLeasedBuffersPerClass() {
+        BufferPool pool = new BufferPool(CLASSES, 1024 * 1024);
+        ByteBuffer a = pool.acquire(1024);
+        pool.acquire(1024);
+        ByteBuffer c = pool.acquire(4096);
+        assertEquals(2, pool.getLeasedCount(0));
+        assertEquals(1, pool.getLeasedCount(1));
+        assertEquals(2 * 1024 + 4096, pool.getLeasedBytes());
+        pool.release(a);
+        pool.release(c);
+        assertEquals(1, pool.getLeasedCount(0));
+        assertEquals(0, pool.getLeasedCount(1));
+        assertEquals(2, pool.getAcquireCount(0));
+    }
+
+    @Test
+    public void oversizedRequestsAreUnpooledHeapBuffers() {
+        BufferPool pool = new BufferPool(CLASSES, 1024 * 1024);
+        ByteBuffer buffer = pool.acquire(5000);
+        assertFalse(buffer.isDirect());
+        assertEquals(5000, buffer.capacity());
+        assertEquals(1, pool.getUnpooledCount());
+        assertEquals(0, pool.getAllocatedBytes());
+        pool.release(buffer);
+        assertEquals(0, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void dropsReleasedBuffersBeyondRetainedLimit() {
+        //slab切出的空闲缓冲区已经超过保留上限，归还的缓冲区都被丢弃
+        BufferPool pool = new BufferPool(CLASSES, 0);
+        ByteBuffer buffer = pool.acquire(1024);
+        pool.release(buffer);
+        assertEquals(1, pool.getDroppedCount(0));
+        assertEquals(0, pool.getLeasedCount(0));
+        assertNotSame(buffer, pool.acquire(1024));
+    }
+
+    @Test
+    public void ignoresNullAndForeignBuffers() {
+        BufferPool pool = new BufferPool(CLASSES, 1024 * 1024);
+        pool.release(null);
+        pool.release(ByteBuffer.allocateDirect(2000));
+        pool.release(ByteBuffer.allocate(1024));
+        assertEquals(0, pool.getRetainedBytes());
+        assertEquals(0, pool.getLeasedCount(0));
+        assertEquals(0, pool.getLeasedCount(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnorderedSizeClasses() {
+        new BufferPool(new int[]{4096, 1024}, 0);
+    }
+}
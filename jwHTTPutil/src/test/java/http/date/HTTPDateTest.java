@@ -0,0 +1,87 @@
+package http.date;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HTTPDateTest {
+    private static final DateTimeFormatter RFC_1123 = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+            .withZone(ZoneOffset.UTC);
+
+    @Test
+    public void formatsKnownDates() {
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", HTTPDate.format(0));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HTTPDate.format(784111777000L));
+        //闰日，以及毫秒部分被截断
+        assertEquals("Tue, 29 Feb 2000 23:59:59 GMT", HTTPDate.format(951868799999L));
+        assertEquals("Wed, 31 Dec 1969 23:59:59 GMT", HTTPDate.format(-1));
+    }
+
+    @Test
+    public void formatMatchesJavaTime() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            //1900年到2100年之间
+            long millis = (long) ((random.nextDouble() * 200 - 70) * 365.25 * 86400_000L);
+            assertEquals(RFC_1123.format(Instant.ofEpochMilli(millis)), HTTPDate.format(millis));
+        }
+    }
+
+    @Test
+    public void parseInvertsFormat() {
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            long millis = (long) (random.nextDouble() * 130 * 365.25 * 86400_000L) / 1000 * 1000;
+            assertEquals(millis, HTTPDate.parse(HTTPDate.format(millis)));
+        }
+    }
+
+    @Test
+    public void parseTrimsWhitespace() {
+        assertEquals(784111777000L, HTTPDate.parse("  Sun, 06 Nov 1994 08:49:37 GMT\t"));
+    }
+
+    @Test
+    public void parseIgnoresDayOfWeek() {
+        assertEquals(784111777000L, HTTPDate.parse("Mon, 06 Nov 1994 08:49:37 GMT"));
+    }
+
+    @Test
+    public void parseRejectsMalformedDates() {
+        assertEquals(-1, HTTPDate.parse(""));
+        //RFC 850和asctime格式不支持
+        assertEquals(-1, HTTPDate.parse("Sunday, 06-Nov-94 08:49:37 GMT"));
+        assertEquals(-1, HTTPDate.parse("Sun Nov  6 08:49:37 1994"));
+        assertEquals(-1, HTTPDate.parse("Sun, 06 Nov 1994 08:49:37 UTC"));
+        assertEquals(-1, HTTPDate.parse("Sun, 06 Nox 1994 08:49:37 GMT"));
+        assertEquals(-1, HTTPDate.parse("Sun, 32 Nov 1994 08:49:37 GMT"));
+        assertEquals(-1, HTTPDate.parse("Sun, 06 Nov 1994 24:49:37 GMT"));
+        assertEquals(-1, HTTPDate.parse("Sun, 06 Nov 1994 08:60:37 GMT"));
+        assertEquals(-1, HTTPDate.parse("Sun, 06 Nov 19a4 08:49:37 GMT"));
+        assertEquals(-1, HTTPDate.parse("Sun, 6 Nov 1994 08:49:37 GMT"));
+    }
+
+    @Test
+    public void nowIsCurrentSecond() {
+        long before = System.currentTimeMillis() / 1000 * 1000;
+        long now = HTTPDate.parse(HTTPDate.now());
+        long after = System.currentTimeMillis();
+        assertTrue(now >= before && now <= after);
+    }
+
+    @Test
+    public void dateFieldBytesIsCompleteHeaderLine() {
+        String field = new String(HTTPDate.dateFieldBytes(), StandardCharsets.US_ASCII);
+        assertTrue(field.startsWith("Date:"));
+        assertTrue(field.endsWith("\r\n"));
+        assertTrue(HTTPDate.parse(field.substring(5, field.length() - 2)) >= 0);
+    }
+}
@@ -0,0 +1,174 @@
+package http.message;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ChunkedCodingTest {
+    @Test
+    public void fillEncodesOneChunkPerRead() throws IOException {
+        ContentSource source = source("hello", "0123456789abcdef0");
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        assertTrue(ChunkedCoding.fill(source, buffer, true));
+        assertEquals("5\r\nhello\r\n", string(buffer));
+        assertTrue(ChunkedCoding.fill(source, buffer, true));
+        assertEquals("11\r\n0123456789abcdef0\r\n", string(buffer));
+        assertFalse(ChunkedCoding.fill(source, buffer, true));
+        assertEquals("0\r\n\r\n", string(buffer));
+    }
+
+    @Test
+    public void fillSkipsEmptyReads() throws IOException {
+        //长度为0的块会被当作结束块，这一段什么都不发送
+        ContentSource source = source("", "a");
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        assertTrue(ChunkedCoding.fill(source, buffer, true));
+        assertFalse(buffer.hasRemaining());
+        assertTrue(ChunkedCoding.fill(source, buffer, true));
+        assertEquals("1\r\na\r\n", string(buffer));
+    }
+
+    @Test
+    public void fillWithoutChunkingCopiesBytes() throws IOException {
+        ContentSource source = source("abc");
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        assertTrue(ChunkedCoding.fill(source, buffer, false));
+        assertEquals("abc", string(buffer));
+        assertFalse(ChunkedCoding.fill(source, buffer, false));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void fillLimitsChunkToBuffer() throws IOException {
+        byte[] body = new byte[100];
+        Arrays.fill(body, (byte) 'x');
+        ContentSource source = source(new String(body, StandardCharsets.US_ASCII));
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        assertTrue(ChunkedCoding.fill(source, buffer, true));
+        //块头预留10个字节，块尾2个字节
+        assertEquals(2 + 2 + 20 + 2, buffer.remaining());
+        assertTrue(string(buffer).startsWith("14\r\n"));
+    }
+
+    @Test
+    public void decodesBodyAndReturnsEndPosition() {
+        byte[] bytes = ascii("5\r\nhello\r\n6\r\n world\r\n0\r\n\r\nGET");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(bytes.length - 3, new ChunkedCoding.Decoder().decode(bytes, 0, bytes.length, out));
+        assertEquals("hello world", out.toString());
+    }
+
+    @Test
+    public void decodesZeroLengthBody() {
+        byte[] bytes = ascii("0\r\n\r\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(bytes.length, new ChunkedCoding.Decoder().decode(bytes, 0, bytes.length, out));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void zeroLengthChunkEndsBody() {
+        //长度为0的块就是结束块，之后的字节不属于报文体
+        byte[] bytes = ascii("3\r\nabc\r\n000\r\n\r\n3\r\ndef\r\n0\r\n\r\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(15, new ChunkedCoding.Decoder().decode(bytes, 0, bytes.length, out));
+        assertEquals("abc", out.toString());
+    }
+
+    @Test
+    public void skipsExtensionsAndTrailers() {
+        byte[] bytes = ascii("A;name=value\r\n0123456789\r\n0;last\r\nExpires: never\r\nX-Sum: 1\r\n\r\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(bytes.length, new ChunkedCoding.Decoder().decode(bytes, 0, bytes.length, out));
+        assertEquals("0123456789", out.toString());
+    }
+
+    @Test
+    public void incompleteBodyNeedsMoreBytes() {
+        byte[] bytes = ascii("5\r\nhello\r\n0\r\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(-1, new ChunkedCoding.Decoder().decode(bytes, 0, bytes.length, out));
+        assertEquals("hello", out.toString());
+    }
+
+    @Test
+    public void decodesBodySplitAtEveryByte() {
+        byte[] bytes = ascii("5;x=1\r\nhello\r\n1\r\n \r\n5\r\nworld\r\n0\r\nX: y\r\n\r\n");
+        ChunkedCoding.Decoder decoder = new ChunkedCoding.Decoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < bytes.length - 1; i++) {
+            assertEquals(-1, decoder.decode(bytes, i, 1, out));
+        }
+        assertEquals(bytes.length, decoder.decode(bytes, bytes.length - 1, 1, out));
+        assertEquals("hello world", out.toString());
+    }
+
+    @Test
+    public void decodeInvertsFill() throws IOException {
+        byte[] body = new byte[100_000];
+        new Random(1).nextBytes(body);
+        ContentSource source = ContentSource.of(Channels.newChannel(new ByteArrayInputStream(body)), -1);
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        ChunkedCoding.Decoder decoder = new ChunkedCoding.Decoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int end = -1;
+        boolean more = true;
+        while (more) {
+            more = ChunkedCoding.fill(source, buffer, true);
+            byte[] chunk = new byte[buffer.remaining()];
+            buffer.get(chunk);
+            end = decoder.decode(chunk, 0, chunk.length, out);
+        }
+        assertEquals(5, end);
+        assertArrayEquals(body, out.toByteArray());
+    }
+
+    private static ContentSource source(String... reads) {
+        Deque<byte[]> pending = new ArrayDeque<>();
+        for (String read : reads) {
+            pending.add(ascii(read));
+        }
+        return new ContentSource() {
+            @Override
+            public long length() {
+                return -1;
+            }
+
+            @Override
+            public int read(ByteBuffer buffer) {
+                byte[] next = pending.poll();
+                if (next == null) {
+                    return -1;
+                }
+                int count = Math.min(next.length, buffer.remaining());
+                buffer.put(next, 0, count);
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static String string(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
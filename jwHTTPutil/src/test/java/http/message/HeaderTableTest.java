@@ -0,0 +1,113 @@
+package http.message;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class HeaderTableTest {
+    @Test
+    public void parsesFieldsAndTrimsValues() {
+        HeaderTable table = parse("Host:  example.com \r\nX-Custom:\tvalue\t\r\n");
+        assertEquals(2, table.size());
+        assertEquals("example.com", table.get(HeaderName.HOST));
+        assertEquals("value", table.get("X-Custom"));
+    }
+
+    @Test
+    public void lookupIsCaseInsensitive() {
+        HeaderTable table = parse("content-length: 5\r\nx-custom: v\r\n");
+        assertEquals("5", table.get(HeaderName.CONTENT_LENGTH));
+        assertEquals("5", table.get("CONTENT-LENGTH"));
+        assertEquals("v", table.get("X-CUSTOM"));
+        //常用参数名按规范写法返回，其他参数名保留原样
+        assertEquals("Content-Length", table.name(0));
+        assertEquals("x-custom", table.name(1));
+    }
+
+    @Test
+    public void acceptsBareLineFeedsAndSkipsLinesWithoutColon() {
+        HeaderTable table = parse("Host: a\nno colon\nAccept: */*\n");
+        assertEquals(2, table.size());
+        assertEquals("a", table.get(HeaderName.HOST));
+        assertEquals("*/*", table.get(HeaderName.ACCEPT));
+    }
+
+    @Test
+    public void missingFieldIsNull() {
+        HeaderTable table = parse("Host: a\r\n");
+        assertNull(table.get(HeaderName.RANGE));
+        assertNull(table.get("X-Missing"));
+    }
+
+    @Test
+    public void duplicatesAreKeptAndLookupReturnsLast() {
+        HeaderTable table = parse("Vary: a\r\nX-Dup: 1\r\nVary: b\r\nX-Dup: 2\r\n");
+        assertEquals(4, table.size());
+        assertEquals("b", table.get(HeaderName.VARY));
+        assertEquals("2", table.get("x-dup"));
+        assertEquals("a", table.value(0));
+        assertEquals("1", table.value(1));
+    }
+
+    @Test
+    public void setReplacesLastOccurrenceOrAppends() {
+        HeaderTable table = parse("Vary: a\r\nVary: b\r\n");
+        table.set(HeaderName.VARY, "c");
+        assertEquals("a", table.value(0));
+        assertEquals("c", table.value(1));
+        table.set("content-type", "text/plain");
+        table.set("X-New", "1");
+        table.set("x-new", "2");
+        assertEquals(4, table.size());
+        assertEquals("text/plain", table.get(HeaderName.CONTENT_TYPE));
+        assertEquals("2", table.get("X-New"));
+    }
+
+    @Test
+    public void removeDeletesAllOccurrencesAndKeepsOthersFindable() {
+        HeaderTable table = parse("Vary: a\r\nHost: h\r\nX-Dup: 1\r\nVary: b\r\nX-Dup: 2\r\nAccept: */*\r\n");
+        table.remove("vary");
+        assertEquals(4, table.size());
+        assertNull(table.get(HeaderName.VARY));
+        assertEquals("h", table.get(HeaderName.HOST));
+        assertEquals("*/*", table.get(HeaderName.ACCEPT));
+        table.remove("X-DUP");
+        assertEquals(2, table.size());
+        assertNull(table.get("X-Dup"));
+        assertEquals("*/*", table.get(HeaderName.ACCEPT));
+        //删除不存在的参数不改变参数表
+        table.remove("X-Missing");
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity() {
+        HeaderTable table = new HeaderTable();
+        for (int i = 0; i < 50; i++) {
+            table.set("X-" + i, String.valueOf(i));
+        }
+        table.set(HeaderName.HOST, "h");
+        assertEquals(51, table.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(String.valueOf(i), table.get("x-" + i));
+        }
+        assertEquals("h", table.get(HeaderName.HOST));
+    }
+
+    @Test
+    public void rangesCanBeAddedBeforeSource() {
+        byte[] bytes = "Host: h".getBytes(StandardCharsets.US_ASCII);
+        HeaderTable table = new HeaderTable();
+        table.addRange(0, 4, 6, 7, HeaderName.of(bytes, 0, 4));
+        table.setSource(bytes);
+        assertEquals("h", table.get(HeaderName.HOST));
+        assertEquals("Host", table.name(0));
+    }
+
+    private static HeaderTable parse(String fields) {
+        byte[] bytes = fields.getBytes(StandardCharsets.ISO_8859_1);
+        return HeaderTable.parse(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,110 @@
+package http.metrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void bucketsAreContiguousAndIncreasing() {
+        long previous = 0;
+        for (int i = 0; i < LatencyHistogram.bucketCount(); i++) {
+            long upper = LatencyHistogram.bucketUpperBound(i);
+            assertTrue("bucket " + i, upper > previous);
+            previous = upper;
+        }
+    }
+
+    @Test
+    public void smallValuesHaveOwnBuckets() {
+        for (int micros = 0; micros < 8; micros++) {
+            assertEquals(micros, bucketOf(micros));
+            assertEquals(micros + 1, LatencyHistogram.bucketUpperBound(micros));
+        }
+    }
+
+    @Test
+    public void valuesAtBucketBoundaries() {
+        //8到16之间每个值一个桶，之后每个2的幂区间分为8个子桶
+        assertEquals(8, bucketOf(8));
+        assertEquals(15, bucketOf(15));
+        assertEquals(16, bucketOf(16));
+        assertEquals(16, bucketOf(17));
+        assertEquals(17, bucketOf(18));
+        assertEquals(18, LatencyHistogram.bucketUpperBound(16));
+        assertEquals(24, bucketOf(32));
+        assertEquals(23, bucketOf(31));
+    }
+
+    @Test
+    public void everyValueFallsInsideItsBucket() {
+        Random random = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            long micros = random.nextLong() >>> (24 + random.nextInt(40));
+            int bucket = bucketOf(micros);
+            long lower = bucket == 0 ? 0 : LatencyHistogram.bucketUpperBound(bucket - 1);
+            long upper = LatencyHistogram.bucketUpperBound(bucket);
+            assertTrue(micros + " in [" + lower + ", " + upper + ")", lower <= micros && micros < upper);
+            //相对误差不超过12.5%
+            assertTrue(upper - lower <= Math.max(1, lower / 8));
+        }
+    }
+
+    @Test
+    public void hugeValuesGoToLastBucket() {
+        int last = LatencyHistogram.bucketCount() - 1;
+        assertEquals(last, bucketOf(LatencyHistogram.bucketUpperBound(last) - 1));
+        assertEquals(last, bucketOf(1L << 41));
+        assertEquals(last, bucketOf(Long.MAX_VALUE / 1000));
+    }
+
+    @Test
+    public void negativeDurationsCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(-5000);
+        assertEquals(1, histogram.snapshot()[0]);
+    }
+
+    @Test
+    public void quantilesReportBucketUpperBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.valueAtQuantile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            histogram.recordNanos(i * 1000L);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050 * 1000L, histogram.getSumNanos());
+        //第50个值是50，所在桶为[48, 52)
+        assertEquals(51, histogram.valueAtQuantile(0.5));
+        assertEquals(1, histogram.valueAtQuantile(0));
+        //100所在桶为[96, 104)
+        assertEquals(103, histogram.valueAtQuantile(0.99));
+        assertEquals(103, histogram.valueAtQuantile(1));
+    }
+
+    @Test
+    public void resetClearsCountsAndSum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(1_000_000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getSumNanos());
+    }
+
+    /**
+     * @return 记录一次该值后计数为1的桶
+     */
+    private static int bucketOf(long micros) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(micros * 1000);
+        long[] snapshot = histogram.snapshot();
+        for (int i = 0; i < snapshot.length; i++) {
+            if (snapshot[i] == 1) {
+                return i;
+            }
+        }
+        throw new AssertionError("value " + micros + " not recorded");
+    }
+}